@@ -0,0 +1,169 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.enterprise.apis.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the XML escaping of {@link GsaExtension} content values with the
+ * previous implementation, kept below as {@link #legacyEscapeXml} and
+ * {@link #legacyUnescapeXml}.
+ *
+ * The inputs are a short plain value, a short value with markup, and a large
+ * XML document like the {@code xmlData} of the importExport entry.
+ *
+ *
+ */
+@State(Scope.Benchmark)
+public class GsaExtensionBenchmark {
+
+  @Param({"plain", "markup", "document"})
+  public String input;
+
+  private String value;
+  private String escaped;
+
+  @Setup
+  public void setUp() {
+    if ("plain".equals(input)) {
+      value = "http://intranet.example.com/docs/";
+    } else if ("markup".equals(input)) {
+      value = "<a href=\"http://example.com/?q=1&r=2\">Tom's page</a>";
+    } else {
+      StringBuilder builder = new StringBuilder("<config>\n");
+      for (int i = 0; i < 20000; i++) {
+        builder.append("  <param name=\"startURLs\" value=\"http://host")
+            .append(i).append(".example.com/\"/>\n");
+      }
+      value = builder.append("</config>\n").toString();
+    }
+    escaped = GsaExtension.escapeXml(value);
+  }
+
+  @Benchmark
+  public String escape() {
+    return GsaExtension.escapeXml(value);
+  }
+
+  @Benchmark
+  public String legacyEscape() {
+    return legacyEscapeXml(value);
+  }
+
+  @Benchmark
+  public String unescape() {
+    return GsaExtension.unescapeXml(escaped);
+  }
+
+  @Benchmark
+  public String legacyUnescape() {
+    return legacyUnescapeXml(escaped);
+  }
+
+  /** Previous implementation of {@code GsaExtension.escapeXml}. */
+  static String legacyEscapeXml(String inString) {
+    if (inString == null) {
+      return null;
+    }
+
+    StringBuilder builder = new StringBuilder();
+    char[] inputArray = inString.toCharArray();
+
+    for (int i = 0; i < inputArray.length; i++) {
+      if (inputArray[i] == '&') {
+        builder.append("&amp;");
+      } else if (inputArray[i] == '<') {
+        builder.append("&lt;");
+      } else if (inputArray[i] == '>') {
+        builder.append("&gt;");
+      } else if (inputArray[i] == '\'') {
+        builder.append("&apos;");
+      } else if (inputArray[i] == '"') {
+        builder.append("&quot;");
+      } else {
+        builder.append(inputArray[i]);
+      }
+    }
+    return builder.toString();
+  }
+
+  /** Previous implementation of {@code GsaExtension.unescapeXml}. */
+  static String legacyUnescapeXml(String xmlString) {
+    int index = xmlString.indexOf('&');
+    if (index < 0) {
+      return xmlString;
+    }
+    char[] inputArray = xmlString.toCharArray();
+    char[] outputArray = new char[inputArray.length];
+    System.arraycopy(inputArray, 0, outputArray, 0, index);
+
+    int pos = index;
+    for (int i = index; i < inputArray.length;) {
+      if (inputArray[i] != '&') {
+        outputArray[pos++] = inputArray[i++];
+        continue;
+      }
+      int j = i + 1;
+
+      for (; j < inputArray.length; j++) {
+        char ch = inputArray[j];
+        if (!Character.isLetter(ch)) {
+          break;
+        }
+      }
+
+      boolean replaced = false;
+      if (j < inputArray.length && inputArray[j] == ';') {
+        String original = new String(inputArray, i, j - i);
+        Character replaceWith;
+        if (original.equals("&amp")) {
+          replaceWith = '&';
+        } else if (original.equals("&lt")) {
+          replaceWith = '<';
+        } else if (original.equals("&gt")) {
+          replaceWith = '>';
+        } else if (original.equals("&apos")) {
+          replaceWith = '\'';
+        } else if (original.equals("&quot")) {
+          replaceWith = '"';
+        } else {
+          replaceWith = null;
+        }
+
+        if (replaceWith != null) {
+          outputArray[pos++] = replaceWith;
+          replaced = true;
+        }
+        if (j < inputArray.length && inputArray[j] == ';') {
+          j++;
+        }
+      }
+
+      if (!replaced) {
+        System.arraycopy(inputArray, i, outputArray, pos, j - i);
+        pos += j - i;
+      }
+      i = j;
+    }
+
+    return new String(outputArray, 0, pos);
+  }
+}
@@ -0,0 +1,75 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.enterprise.apis.client;
+
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.ParseSource;
+import com.google.gdata.util.common.xml.XmlWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Measures parsing of GSA feeds with {@link BaseFeed#readFeed} and
+ * generation of GSA entries with
+ * {@link com.google.gdata.data.BaseEntry#generateAtom}, for each payload of
+ * {@link GsaPayloads} at several entry counts.
+ *
+ *
+ */
+@State(Scope.Benchmark)
+public class GsaFeedBenchmark {
+
+  @Param({"status", "policyAcls", "logs", "importExport"})
+  public String payload;
+
+  @Param({"1", "100", "1000"})
+  public int entryCount;
+
+  private String feedXml;
+  private ExtensionProfile extProfile;
+  private GsaEntry entry;
+
+  @Setup
+  public void setUp() throws Exception {
+    feedXml = GsaPayloads.load(payload, entryCount);
+    extProfile = GsaService.getSharedExtensionProfile();
+    entry = readFeed().getEntries().get(0);
+  }
+
+  @Benchmark
+  public GsaFeed readFeed() throws Exception {
+    return BaseFeed.readFeed(new ParseSource(new StringReader(feedXml)),
+        GsaFeed.class, extProfile);
+  }
+
+  @Benchmark
+  public String generateAtom() throws Exception {
+    StringWriter out = new StringWriter();
+    XmlWriter writer = new XmlWriter(out);
+    entry.generateAtom(writer, extProfile);
+    writer.flush();
+    return out.toString();
+  }
+}
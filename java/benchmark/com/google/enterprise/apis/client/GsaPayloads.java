@@ -0,0 +1,99 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.enterprise.apis.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * GSA admin API responses used as benchmark input.  The payloads are stored
+ * next to this class in {@code payloads/<name>.xml}, one per feed shape:
+ * {@code status}, {@code policyAcls}, {@code logs} and {@code importExport}.
+ *
+ *
+ */
+public class GsaPayloads {
+
+  /** Names of the available payloads. */
+  public static final String[] NAMES =
+      { "status", "policyAcls", "logs", "importExport" };
+
+  private GsaPayloads() {
+  }
+
+  /**
+   * Loads a payload.
+   *
+   * @param name name of the payload
+   * @return the payload XML
+   * @throws IOException if the payload cannot be read
+   */
+  public static String load(String name) throws IOException {
+    InputStream in =
+        GsaPayloads.class.getResourceAsStream("payloads/" + name + ".xml");
+    if (in == null) {
+      throw new IOException("Unknown payload: " + name);
+    }
+    Reader reader = new InputStreamReader(in, "UTF-8");
+    try {
+      StringBuilder builder = new StringBuilder();
+      char[] buffer = new char[8192];
+      int count;
+      while ((count = reader.read(buffer)) > 0) {
+        builder.append(buffer, 0, count);
+      }
+      return builder.toString();
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Loads a payload and resizes it to the given number of entries, by
+   * repeating its entries with distinct IDs.
+   *
+   * @param name name of the payload
+   * @param entryCount number of entries of the returned feed
+   * @return the payload XML with {@code entryCount} entries
+   * @throws IOException if the payload cannot be read
+   */
+  public static String load(String name, int entryCount) throws IOException {
+    String feed = load(name);
+    int start = feed.indexOf("<entry>");
+    int end = feed.lastIndexOf("</entry>") + "</entry>".length();
+    String entries = feed.substring(start, end);
+
+    StringBuilder builder = new StringBuilder(feed.length()
+        + entries.length() * Math.max(0, entryCount - 1));
+    builder.append(feed, 0, start);
+    for (int i = 0; i < entryCount; ) {
+      int entryStart = entries.indexOf("<entry>");
+      while (entryStart >= 0 && i < entryCount) {
+        int entryEnd = entries.indexOf("</entry>", entryStart)
+            + "</entry>".length();
+        String entry = entries.substring(entryStart, entryEnd);
+        builder.append(entry.replace("</id>", "-" + i + "</id>"));
+        entryStart = entries.indexOf("<entry>", entryEnd);
+        i++;
+      }
+    }
+    builder.append(feed, end, feed.length());
+    return builder.toString();
+  }
+}
@@ -0,0 +1,175 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.authn.oauth;
+
+import com.google.gdata.util.common.base.CharEscapers;
+import com.google.gdata.util.common.util.Base64;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Measures the requests per second that can be signed with OAuth, that is
+ * building the signature base string of a request with
+ * {@link OAuthUtil#getSignatureBaseString} and signing it with an
+ * {@link OAuthSigner}, against the previous implementations, kept below as
+ * {@link #legacyGetSignatureBaseString} and {@link #legacyGetSignature}.
+ *
+ * The setup checks that both implementations agree on the signature.  Run
+ * with several threads (JMH option {@code -t}) to measure signers shared by
+ * threads.
+ *
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OAuthSignerBenchmark {
+
+  private static final String REQUEST_URL = "http://gsa.example.com:8000"
+      + "/feeds/policyAcls?start-index=101&max-results=100";
+
+  @Param({"HMAC-SHA1", "RSA-SHA1"})
+  public String signatureMethod;
+
+  private OAuthSigner signer;
+  private PrivateKey privateKey;
+  private OAuthParameters parameters;
+
+  @Setup
+  public void setUp() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    privateKey = generator.generateKeyPair().getPrivate();
+    if (signatureMethod.equals("HMAC-SHA1")) {
+      signer = new OAuthHmacSha1Signer();
+    } else {
+      signer = new OAuthRsaSha1Signer(Base64.encode(privateKey.getEncoded()));
+    }
+
+    parameters = new OAuthParameters();
+    parameters.setOAuthConsumerKey("gsa.example.com");
+    parameters.setOAuthConsumerSecret("kd94hf93k423kf44");
+    parameters.setOAuthToken("nnch734d00sl2jdk");
+    parameters.setOAuthTokenSecret("pfkkdhi9sl3r4s00");
+    parameters.setOAuthSignatureMethod(signatureMethod);
+    parameters.setOAuthTimestamp("1191242096");
+    parameters.setOAuthNonce("kllo9940pd9333jh");
+
+    if (!sign().equals(legacySign())) {
+      throw new IllegalStateException(
+          "Implementations differ on " + signatureMethod);
+    }
+  }
+
+  @Benchmark
+  public String sign() throws Exception {
+    String baseString = OAuthUtil.getSignatureBaseString(REQUEST_URL, "GET",
+        parameters.getBaseParameters());
+    return signer.getSignature(baseString, parameters);
+  }
+
+  @Benchmark
+  public String legacySign() throws Exception {
+    String baseString = legacyGetSignatureBaseString(REQUEST_URL, "GET",
+        parameters.getBaseParameters());
+    return legacyGetSignature(baseString);
+  }
+
+  @Benchmark
+  public String baseString() throws Exception {
+    return OAuthUtil.getSignatureBaseString(REQUEST_URL, "GET",
+        parameters.getBaseParameters());
+  }
+
+  @Benchmark
+  public String legacyBaseString() throws Exception {
+    return legacyGetSignatureBaseString(REQUEST_URL, "GET",
+        parameters.getBaseParameters());
+  }
+
+  /** Previous implementations of the signers. */
+  private String legacyGetSignature(String baseString) throws Exception {
+    if (signatureMethod.equals("HMAC-SHA1")) {
+      String keyString = legacyEncode(parameters.getOAuthConsumerSecret())
+          + "&" + legacyEncode(parameters.getOAuthTokenSecret());
+      Mac mac = Mac.getInstance("HmacSHA1");
+      mac.init(new SecretKeySpec(keyString.getBytes("UTF-8"), "HmacSHA1"));
+      return Base64.encode(mac.doFinal(baseString.getBytes("UTF-8")));
+    } else {
+      Signature rsa = Signature.getInstance("SHA1withRSA");
+      rsa.initSign(privateKey);
+      rsa.update(baseString.getBytes("UTF-8"));
+      return Base64.encode(rsa.sign());
+    }
+  }
+
+  /** Previous implementation of {@code OAuthUtil.getSignatureBaseString}. */
+  static String legacyGetSignatureBaseString(String requestUrl,
+      String httpMethod, Map<String, String> baseParameters)
+      throws OAuthException {
+    return legacyEncode(httpMethod.toUpperCase()) + '&'
+        + legacyEncode(OAuthUtil.normalizeUrl(requestUrl)) + '&'
+        + legacyEncode(legacyNormalizeParameters(requestUrl, baseParameters));
+  }
+
+  /** Previous implementation of {@code OAuthUtil.normalizeParameters}. */
+  static String legacyNormalizeParameters(
+      String requestUrl, Map<String, String> requestParameters) {
+    TreeMap<String, String> alphaParams = 
+        new TreeMap<String, String>(requestParameters);
+    if (requestUrl.indexOf('?') > 0) {
+      Map<String, String> queryParameters = OAuthUtil.parseQuerystring(
+          requestUrl.substring(requestUrl.indexOf('?')+1));
+      alphaParams.putAll(queryParameters);
+    }
+    StringBuilder paramString = new StringBuilder();
+    for (Map.Entry<String, String> e : alphaParams.entrySet()) {
+      if (e.getValue().length() == 0) {
+        continue;
+      }
+      if (paramString.length() > 0) {
+        paramString.append("&");
+      }
+      paramString.append(legacyEncode(e.getKey())).append("=")
+          .append(legacyEncode(e.getValue()));
+    }
+    return paramString.toString();
+  }
+
+  /** Previous implementation of {@code OAuthUtil.encode}. */
+  static String legacyEncode(String stringToEncode) {
+    return CharEscapers.uriEscaper().escape(stringToEncode).replace("+", "%20")
+    .replace("*", "%2A").replace("%7E", "~");
+  }
+}
@@ -0,0 +1,204 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+
+/**
+ * Measures {@link DateTime#parseDateTimeChoice} and {@link DateTime#toString}
+ * for the date/time forms found in GSA feeds, against the previous
+ * pattern and {@link Calendar} based implementation, kept below as
+ * {@link #legacyParseDateTimeChoice} and {@link #legacyToString}.
+ *
+ * The setup checks that both implementations agree on each value.
+ *
+ *
+ */
+@State(Scope.Benchmark)
+public class DateTimeBenchmark {
+
+  private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+  @Param({"2009-03-02T18:14:06.423Z", "2009-03-02T18:14:06Z",
+      "2009-03-02T10:14:06.423-08:00", "2009-03-02"})
+  public String value;
+
+  private DateTime dateTime;
+
+  @Setup
+  public void setUp() {
+    dateTime = DateTime.parseDateTimeChoice(value);
+    DateTime legacy = legacyParseDateTimeChoice(value);
+    if (dateTime.getValue() != legacy.getValue()
+        || !equal(dateTime.getTzShift(), legacy.getTzShift())
+        || dateTime.isDateOnly() != legacy.isDateOnly()
+        || !dateTime.toString().equals(legacyToString(legacy))) {
+      throw new IllegalStateException("Implementations differ on " + value);
+    }
+  }
+
+  @Benchmark
+  public DateTime parse() {
+    return DateTime.parseDateTimeChoice(value);
+  }
+
+  @Benchmark
+  public DateTime legacyParse() {
+    return legacyParseDateTimeChoice(value);
+  }
+
+  @Benchmark
+  public String format() {
+    return dateTime.toString();
+  }
+
+  @Benchmark
+  public String legacyFormat() {
+    return legacyToString(dateTime);
+  }
+
+  private static boolean equal(Integer a, Integer b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  /** Previous implementation of {@code DateTime.parseDateTimeChoice}. */
+  static DateTime legacyParseDateTimeChoice(String str) {
+    Matcher m = DateTime.dateTimeChoicePattern.matcher(str);
+    if (!m.matches()) {
+      throw new NumberFormatException("Invalid date/time format.");
+    }
+
+    DateTime ret = new DateTime();
+    ret.dateOnly = m.group(4) == null;
+
+    if (m.group(10) == null) {
+      // No time zone specified.
+    } else if (m.group(10).equalsIgnoreCase("Z")) {
+      ret.tzShift = new Integer(0);
+    } else {
+      ret.tzShift = new Integer((Integer.valueOf(m.group(13)) * 60 +
+                                 Integer.valueOf(m.group(14))));
+      if (m.group(12).equals("-")) {
+        ret.tzShift = new Integer(-ret.tzShift.intValue());
+      }
+    }
+
+    Calendar dateTime = new GregorianCalendar(GMT);
+
+    dateTime.clear();
+    if (ret.dateOnly) {
+      dateTime.set(Integer.valueOf(m.group(1)),
+                   Integer.valueOf(m.group(2)) - 1,
+                   Integer.valueOf(m.group(3)));
+    } else {
+      dateTime.set(Integer.valueOf(m.group(1)),
+                   Integer.valueOf(m.group(2)) - 1,
+                   Integer.valueOf(m.group(3)),
+                   Integer.valueOf(m.group(5)),
+                   Integer.valueOf(m.group(6)),
+                   Integer.valueOf(m.group(7)));
+      if (m.group(9) != null && m.group(9).length() > 0) {
+        final BigDecimal bd = new BigDecimal("0." + m.group(9));
+        dateTime.set(Calendar.MILLISECOND, bd.movePointRight(3).intValue());
+      }
+    }
+
+    ret.value = dateTime.getTimeInMillis();
+    if (ret.tzShift != null) {
+      ret.value -= ret.tzShift.intValue() * 60000;
+    }
+
+    return ret;
+  }
+
+  /** Previous implementation of {@code DateTime.toString}. */
+  static String legacyToString(DateTime value) {
+    StringBuilder sb = new StringBuilder();
+
+    Calendar dateTime = new GregorianCalendar(GMT);
+    long localTime = value.value;
+    if (value.tzShift != null) {
+     localTime += value.tzShift.longValue() * 60000;
+    }
+
+    dateTime.setTimeInMillis(localTime);
+
+    appendInt(sb, dateTime.get(Calendar.YEAR), 4);
+    sb.append('-');
+    appendInt(sb, dateTime.get(Calendar.MONTH) + 1, 2);
+    sb.append('-');
+    appendInt(sb, dateTime.get(Calendar.DAY_OF_MONTH), 2);
+
+    if (!value.dateOnly) {
+      sb.append('T');
+      appendInt(sb, dateTime.get(Calendar.HOUR_OF_DAY), 2);
+      sb.append(':');
+      appendInt(sb, dateTime.get(Calendar.MINUTE), 2);
+      sb.append(':');
+      appendInt(sb, dateTime.get(Calendar.SECOND), 2);
+
+      if (dateTime.isSet(Calendar.MILLISECOND)) {
+        sb.append('.');
+        appendInt(sb, dateTime.get(Calendar.MILLISECOND), 3);
+      }
+    }
+
+    if (value.tzShift != null) {
+      if (value.tzShift.intValue() == 0) {
+        sb.append('Z');
+      } else {
+        int absTzShift = value.tzShift.intValue();
+        if (absTzShift > 0) {
+          sb.append('+');
+        } else {
+          sb.append('-');
+          absTzShift = -absTzShift;
+        }
+        appendInt(sb, absTzShift / 60, 2);
+        sb.append(':');
+        appendInt(sb, absTzShift % 60, 2);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private static void appendInt(StringBuilder sb, int num, int numDigits) {
+    if (num < 0) {
+      sb.append('-');
+      num = -num;
+    }
+
+    char[] digits = new char[numDigits];
+    for (int digit = numDigits - 1; digit >= 0; --digit) {
+      digits[digit] = (char)('0' + num % 10);
+      num /= 10;
+    }
+
+    sb.append(digits);
+  }
+}
@@ -0,0 +1,50 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.util.common.base;
+
+import com.google.gdata.util.httputil.FastURLEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures URI escaping of GSA entry IDs, such as the URL patterns of
+ * policy ACLs, with {@link CharEscapers#uriEscaper()} and
+ * {@link FastURLEncoder#encode(String)}.
+ *
+ *
+ */
+@State(Scope.Benchmark)
+public class EscaperBenchmark {
+
+  @Param({"systemStatus", "http://intranet.example.com/hr/",
+      "regexp:^http://intranet\\.example\\.com/docs/.*\\.pdf$"})
+  public String value;
+
+  @Benchmark
+  public String uriEscaper() {
+    return CharEscapers.uriEscaper().escape(value);
+  }
+
+  @Benchmark
+  @SuppressWarnings("deprecation")
+  public String fastUrlEncoder() {
+    return FastURLEncoder.encode(value);
+  }
+}
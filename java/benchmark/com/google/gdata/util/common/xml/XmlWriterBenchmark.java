@@ -0,0 +1,71 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.util.common.xml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures {@link XmlWriter} output of {@code gsa:content} elements, the
+ * shape of every GSA entry, with plain and markup-heavy content values.
+ *
+ *
+ */
+@State(Scope.Benchmark)
+public class XmlWriterBenchmark {
+
+  private static final XmlNamespace GSA_NAMESPACE =
+      new XmlNamespace("gsa", "http://schemas.google.com/gsa/2007");
+
+  @Param({"100", "10000"})
+  public int elementCount;
+
+  @Param({"plain", "markup"})
+  public String content;
+
+  private String value;
+
+  @Setup
+  public void setUp() {
+    value = "plain".equals(content)
+        ? "group:hr user:alice user:bob group:managers"
+        : "<param name=\"startURLs\" value=\"http://host.example.com/?a=1&b=2\"/>";
+  }
+
+  @Benchmark
+  public String write() throws IOException {
+    StringWriter out = new StringWriter();
+    XmlWriter writer = new XmlWriter(out);
+    writer.startElement(GSA_NAMESPACE, "entry", null, null);
+    for (int i = 0; i < elementCount; i++) {
+      List<XmlWriter.Attribute> attrs = new ArrayList<XmlWriter.Attribute>(1);
+      attrs.add(new XmlWriter.Attribute("name", "property" + i));
+      writer.simpleElement(GSA_NAMESPACE, "content", attrs, value);
+    }
+    writer.endElement(GSA_NAMESPACE, "entry");
+    writer.flush();
+    return out.toString();
+  }
+}
@@ -16,10 +16,9 @@
 
 package sample.aclclient;
 
+import com.google.enterprise.apis.client.GsaBatch;
 import com.google.enterprise.apis.client.GsaClient;
-import com.google.enterprise.apis.client.GsaEntry;
-import com.google.enterprise.apis.client.GsaFeed;
-import com.google.enterprise.apis.client.Terms;
+import com.google.enterprise.apis.client.PolicyAclSync;
 import com.google.gdata.util.AuthenticationException;
 import com.google.gdata.util.ServiceException;
 
@@ -29,8 +28,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.MalformedURLException;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -46,52 +43,35 @@ public class AclClient {
   private AclClient() {
   }
   
-  /** Clears all the policy acl rules. */
-  private static void clearAllRules() throws MalformedURLException,
-      ServiceException, IOException {
-    Map<String, String> queries = new HashMap<String, String>();
-    List<GsaEntry> entries = new LinkedList<GsaEntry>();
-    
-    Integer startLine = 0;
-    queries.put(Terms.QUERY_MAX_LINES, "500");
-    
-    GsaFeed feed;
-    
-    do {
-      queries.put(Terms.QUERY_START_LINE, startLine.toString());
-      feed = gsaClient.queryFeed(Terms.FEED_POLICY_ACLS, queries);
-      entries.addAll(feed.getEntries());
-      startLine += 500;
-    } while (feed.getEntries().size() > 0);
-    
-    for (GsaEntry entry : entries) {
-      gsaClient.deleteEntry(Terms.FEED_POLICY_ACLS, 
-          entry.getGsaContent(Terms.PROPERTY_URL_PATTERN));
-      System.out.println("Cleared rule " + entry.getGsaContent(Terms.PROPERTY_URL_PATTERN));
+  /** Prints the progress of the import, and the rules that failed. */
+  private static class ProgressPrinter implements PolicyAclSync.Listener {
+    public synchronized void onProgress(PolicyAclSync.Progress progress) {
+      System.out.println(progress);
+    }
+
+    public synchronized void onFailure(GsaBatch.Result result) {
+      System.err.println("Failed rule " + result);
     }
   }
-  
-  /** Adds new rules from a reader. 
+
+  /** Synchronizes the rules of the appliance with the rules of a reader. 
    *  The format of the ACL rules should be something like:
-   *  'group:enterprise user:tom user:john group:interns\n
-   *   user:jerry group:school'
+   *  'http://intranet/hr/ group:enterprise user:tom user:john group:interns\n
+   *   http://intranet/school/ user:jerry group:school'
+   *  Rules of the appliance that are not in the reader are only deleted
+   *  if {@code replaceAll} is set.
    */
-  private static void addNewRules(Reader reader) throws IOException, ServiceException {
-    BufferedReader bufferReader = new BufferedReader(reader);
-    String line = null;
-    
-    while ((line = bufferReader.readLine()) != null) {
-      if (!line.equals("")) {
-        String[] result = line.split(" ", 2);
-        if (result.length == 2) {
-          System.out.println("Add rule: " + line);
-          GsaEntry entry = new GsaEntry();
-          entry.addGsaContent(Terms.PROPERTY_URL_PATTERN, result[0]);
-          entry.addGsaContent(Terms.PROPERTY_POLICY_ACL, result[1]);
-          gsaClient.insertEntry(Terms.FEED_POLICY_ACLS, entry);
-        }
-      }
-    }
+  private static PolicyAclSync.Progress syncRules(Reader reader,
+      boolean replaceAll) throws IOException, ServiceException {
+    Map<String, String> rules = PolicyAclSync.readRules(reader);
+    PolicyAclSync sync = new PolicyAclSync(gsaClient);
+    sync.setDeleteMissing(replaceAll);
+    sync.setListener(new ProgressPrinter());
+
+    List<GsaBatch.Operation> operations = sync.diff(rules);
+    System.out.println("Read " + rules.size() + " rules, " + operations.size()
+        + " to apply");
+    return sync.apply(operations);
   }
   
   public static void main(String[] args) {
@@ -149,15 +129,19 @@ public class AclClient {
       gsaClient = new GsaClient(address, user, password);
       System.out.println("Login to " + address);
       
-      // clear all old rules if required
-      if (isReplaceAll) {
-        clearAllRules();
-        System.out.println("Cleared all the rules");
+      // apply the changes from the file, deleting old rules if required
+      Reader reader = new FileReader(fileName);
+      PolicyAclSync.Progress progress;
+      try {
+        progress = syncRules(reader, isReplaceAll);
+      } finally {
+        reader.close();
+      }
+      if (progress.getFailed() == 0) {
+        System.out.println("All rules have been imported.");
+      } else {
+        System.out.println(progress.getFailed() + " rules failed to import.");
       }
-      
-      //add new rules from file
-      addNewRules(new FileReader(fileName));
-      System.out.println("All rules have been imported.");
       
     } catch (AuthenticationException e) {
       e.printStackTrace();
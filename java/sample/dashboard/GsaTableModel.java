@@ -19,12 +19,18 @@ package sample.dashboard;
 import com.google.enterprise.apis.client.GsaClient;
 import com.google.enterprise.apis.client.GsaFeed;
 import com.google.enterprise.apis.client.GsaEntry;
+import com.google.enterprise.apis.client.GsaFleetClient;
 import com.google.enterprise.apis.client.Terms;
+import com.google.gdata.util.ServiceException;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Map;
@@ -38,6 +44,9 @@ import javax.swing.table.AbstractTableModel;
  * classes, accesses external servers, and has a self-updating thread) that it warrants being
  * its own class.
  * 
+ * All the GSA servers are refreshed together by a single thread, which fetches their feeds
+ * in parallel through a {@link GsaFleetClient} backed by a small thread pool.
+ * 
  * 
  */
 public class GsaTableModel extends AbstractTableModel {
@@ -46,6 +55,8 @@ public class GsaTableModel extends AbstractTableModel {
   private static final int ROW_COUNT = 25;
   private static final Long ERROR_VALUE_LONG = new Long(-99999);
   private static final Double ERROR_VALUE_DOUBLE = new Double(-99999.9999);
+  private static final long REFRESH_INTERVAL_MILLIS = 3000;
+  private static final int FLEET_THREAD_COUNT = 4;
 
   private static final Logger logger =
       Logger.getLogger(GsaTableModel.class.getName());
@@ -94,7 +105,10 @@ public class GsaTableModel extends AbstractTableModel {
   };
 
   /** Back-end data for the table model */
-  private volatile List<RowData> rowDataList;
+  private final List<RowData> rowDataList = new CopyOnWriteArrayList<RowData>();
+
+  /** Fetches the feeds of all the GSA servers in parallel */
+  private final GsaFleetClient fleet;
 
   /** Separate the column headers (UI), from the rest of the column properties (data) */
   private List<String> columnHeaderList;
@@ -104,13 +118,38 @@ public class GsaTableModel extends AbstractTableModel {
    * refresh the data stored in the model.
    */
   public GsaTableModel() {
-    rowDataList = new ArrayList<RowData>();
+    ExecutorService executor = Executors.newFixedThreadPool(FLEET_THREAD_COUNT,
+        new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "GsaTableModel fleet");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    fleet = new GsaFleetClient(executor, FLEET_THREAD_COUNT);
+    fleet.setTimeoutMillis(REFRESH_INTERVAL_MILLIS * 5);
     logger.info("Number of columns: " + String.valueOf(columnPropList.size()));
     columnHeaderList = new ArrayList<String>(columnPropList.size());
     for (int i = 0; i < columnPropList.size(); i++) {
       columnHeaderList.add(null);
     }
     logger.info("Size of Created header list: " + String.valueOf(columnHeaderList.size()));
+
+    Thread refresher = new Thread("GsaTableModel refresher") {
+      @Override
+      public void run() {
+        while (true) {
+          refreshAllRows();
+          try {
+            sleep(REFRESH_INTERVAL_MILLIS);
+          } catch (InterruptedException ex) {
+            return;
+          }
+        }
+      }
+    };
+    refresher.setDaemon(true);
+    refresher.start();
   }
 
   @Override
@@ -227,6 +266,7 @@ public class GsaTableModel extends AbstractTableModel {
   public void addServer(GsaClient client) {
     // move it to after the last row with data in it
     rowDataList.add(new RowData(client));
+    fleet.addClient(client);
     int row = rowDataList.size() - 1;
     logger.info("Row " + String.valueOf(row) + " updated");
     // since there will be latency in GData call, refresh the hostname/address first
@@ -274,13 +314,14 @@ public class GsaTableModel extends AbstractTableModel {
    * Removes selected GSAs from monitoring.
    */
   public void removeRows() {
-    for (Iterator<RowData> i = rowDataList.iterator(); i.hasNext(); ) {
-      RowData rowData = i.next();
+    List<RowData> removed = new ArrayList<RowData>();
+    for (RowData rowData : rowDataList) {
       if ((rowData.isSelected != null) && rowData.isSelected) {
-        rowData.finished = true;
-        i.remove();
+        fleet.removeClient(rowData.client);
+        removed.add(rowData);
       }
     }
+    rowDataList.removeAll(removed);
     fireTableDataChanged();
   }
 
@@ -310,12 +351,76 @@ public class GsaTableModel extends AbstractTableModel {
     rowData.crawlRate = ERROR_VALUE_DOUBLE;
   }
 
+  /**
+   * Retrieves the feeds of all the GSA servers in parallel, and updates their rows.
+   */
+  public void refreshAllRows() {
+    Map<GsaClient, GsaFleetClient.Result<Map<String, Map<String, GsaEntry>>>> results;
+    try {
+      results = fleet.execute(
+          new GsaFleetClient.Request<Map<String, Map<String, GsaEntry>>>() {
+            public Map<String, Map<String, GsaEntry>> execute(GsaClient client)
+                throws ServiceException, IOException {
+              return fetchFeeds(client);
+            }
+          });
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    for (RowData rowData : rowDataList) {
+      GsaFleetClient.Result<Map<String, Map<String, GsaEntry>>> result =
+          results.get(rowData.client);
+      if (result == null) {
+        // added after the refresh started
+        continue;
+      }
+      logger.info("Refreshed client: " + rowData.client.getAddress());
+      if (result.isSuccess()) {
+        updateRow(rowData, result.getValue());
+      } else {
+        logger.log(Level.SEVERE, result.getFailure().getMessage());
+        setToErrorValues(rowData);
+      }
+    }
+    fireTableDataChanged();
+  }
+
   /**
    * Retrieves all relevant values, based on ColumnProperties defined, from a GsaClient.
    * 
    * @param rowData row data class whose data to update
    */
   public void refreshRow(RowData rowData) {
+    try {
+      updateRow(rowData, fetchFeeds(rowData.client));
+    } catch (Exception ex) {
+      /*
+       * Note since this is a GUI refresh, to be invoked periodically by a thread
+       * running in the background, throwing exception and causing termination of the thread
+       * is not a good option.  Instead, when exceptions are encountered, all values in
+       * the row being refreshed will be set to a large negative value.
+       * 
+       * The usage of the generic Exception class is also intentional, since the various possible
+       * exceptions in this method are to be treated the same way, which is:
+       * (1) log it, (2) set this row to large negative error values, (3) refresh the GUI.
+       */
+      logger.log(Level.SEVERE, ex.getMessage());
+      setToErrorValues(rowData);
+    } finally {
+      fireTableDataChanged();
+    }
+  }
+
+  /**
+   * Retrieves the feeds needed by the columns from a GsaClient.
+   * 
+   * @param client the GsaClient connecting to the GSA server
+   * @return the entries of each feed, by feed name and entry ID
+   */
+  private static Map<String, Map<String, GsaEntry>> fetchFeeds(GsaClient client)
+      throws ServiceException, IOException {
     /*
      * Implementation Note: 
      * In order to avoid repeated GData calls to the GSA, which is the most expensive operation
@@ -324,8 +429,32 @@ public class GsaTableModel extends AbstractTableModel {
      * in order to speed up subsequent refresh logic.  
      */
     Map<String, Map<String, GsaEntry>> feedMap = new HashMap<String, Map<String, GsaEntry>>();
-    GsaClient client = rowData.client;
+    for (ColumnProps colProps : columnPropList) {
+      if ((colProps.feedName == null) || (colProps.entryId == null)) {
+        continue;
+      }
 
+      if (!feedMap.containsKey(colProps.feedName)) {
+        // Create another set in the map.
+        GsaFeed feed = client.getFeed(colProps.feedName);
+        Map<String, GsaEntry> entryMap = new HashMap<String, GsaEntry>();
+        for (GsaEntry entry : feed.getEntries()) {
+          String entryID = entry.getGsaContent("entryID");
+          entryMap.put(entryID, entry);
+        }
+        feedMap.put(colProps.feedName, entryMap);
+      }
+    }
+    return feedMap;
+  }
+
+  /**
+   * Updates the values of a row from the feeds retrieved from its GsaClient.
+   * 
+   * @param rowData row data class whose data to update
+   * @param feedMap the entries of each feed, by feed name and entry ID
+   */
+  private void updateRow(RowData rowData, Map<String, Map<String, GsaEntry>> feedMap) {
     try {
       for (int i = 0; i < columnPropList.size(); i++) {
 
@@ -338,18 +467,6 @@ public class GsaTableModel extends AbstractTableModel {
           continue;
         }
 
-        if (!feedMap.containsKey(colProps.feedName)) {
-          // Create another set in the map.
-          GsaFeed feed = null;
-          feed = client.getFeed(colProps.feedName);
-          Map<String, GsaEntry> entryMap = new HashMap<String, GsaEntry>();
-          for (GsaEntry entry : feed.getEntries()) {
-            String entryID = entry.getGsaContent("entryID");
-            entryMap.put(entryID, entry);
-          }
-          feedMap.put(colProps.feedName, entryMap);
-        }
-
         String value = null;
         if (feedMap.containsKey(colProps.feedName)) {
           Map<String, GsaEntry> entryMap = feedMap.get(colProps.feedName);
@@ -377,21 +494,10 @@ public class GsaTableModel extends AbstractTableModel {
             break;
         }
       }
-    } catch (Exception ex) {
-      /*
-       * Note since this is a GUI refresh, to be invoked periodically by a thread
-       * running in the background, throwing exception and causing termination of the thread
-       * is not a good option.  Instead, when exceptions are encountered, all values in
-       * the row being refreshed will be set to a large negative value.
-       * 
-       * The usage of the generic Exception class is also intentional, since the various possible
-       * exceptions in this method are to be treated the same way, which is:
-       * (1) log it, (2) set this row to large negative error values, (3) refresh the GUI.
-       */
+    } catch (RuntimeException ex) {
+      // unparsable values
       logger.log(Level.SEVERE, ex.getMessage());
       setToErrorValues(rowData);
-    } finally {
-      fireTableDataChanged();
     }
   }
 
@@ -408,7 +514,7 @@ public class GsaTableModel extends AbstractTableModel {
   /**
    * private inner class used as data element aggregator.
    */
-  private class RowData extends Thread {
+  private static class RowData {
     public GsaClient client;
     public Boolean isSelected;
     public Boolean isPaused;
@@ -416,30 +522,10 @@ public class GsaTableModel extends AbstractTableModel {
     public Long docsFound;
     public Long docsServed;
     public Double crawlRate;
-    public Boolean finished;
     
     public RowData(GsaClient client) {
       this.client = client;
-      this.finished = false;
-      this.start();
     }
-
-    @Override
-    public void run() {
-      super.run();
-      while(!finished) {
-          logger.info("Refreshing client: " + client.getAddress());
-          refreshRow(this);
-        try {
-          // sleep for 3 second
-          sleep(3000);
-        } catch (InterruptedException ex) {
-          // Do nothing while being interrupted
-          logger.severe(ex.toString());
-        }
-      }
-    }
-    
   }
 
   /**
@@ -0,0 +1,413 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.enterprise.apis.client;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Asynchronous front end of a {@link GsaClient}.
+ *
+ * Every operation of GsaClient is available here as a method that returns
+ * immediately with a {@link Future}.  The request itself runs on the
+ * {@link Executor} supplied at construction time, which can be any executor,
+ * including one that starts a new (virtual) thread per task.  At most
+ * {@code maxConcurrentRequests} requests are in flight against the appliance
+ * at any time; further requests are queued without occupying an executor
+ * thread until a slot frees up.
+ *
+ * The URLs and error handling are those of the wrapped GsaClient: a request
+ * that fails with a {@link com.google.gdata.util.ServiceException} or an
+ * {@link java.io.IOException} completes its future exceptionally, and
+ * {@link Future#get()} throws an {@link ExecutionException} whose cause is the
+ * original exception.  Callers that prefer not to block on the future can
+ * pass a {@link Callback}, which is invoked on the executor thread once the
+ * request completes.
+ *
+ *
+ */
+public class AsyncGsaClient {
+
+  /**
+   * Receives the outcome of an asynchronous request.
+   *
+   * @param <T> type of the request result
+   */
+  public interface Callback<T> {
+
+    /**
+     * Called when the request completed successfully.
+     *
+     * @param result result of the request, {@code null} for deletes
+     */
+    public void onSuccess(T result);
+
+    /**
+     * Called when the request failed.
+     *
+     * @param cause the exception thrown by the request
+     */
+    public void onFailure(Throwable cause);
+  }
+
+  /** Default number of concurrent requests per appliance. */
+  public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+  private final GsaClient client;
+  private final Executor executor;
+  private final Semaphore slots;
+  private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+
+  /**
+   * Constructs an asynchronous client that runs at most
+   * {@link #DEFAULT_MAX_CONCURRENT_REQUESTS} concurrent requests.
+   *
+   * @param client the client used to issue the requests
+   * @param executor the executor that runs the requests
+   */
+  public AsyncGsaClient(GsaClient client, Executor executor) {
+    this(client, executor, DEFAULT_MAX_CONCURRENT_REQUESTS);
+  }
+
+  /**
+   * Constructs an asynchronous client.
+   *
+   * @param client the client used to issue the requests
+   * @param executor the executor that runs the requests
+   * @param maxConcurrentRequests maximum number of requests in flight
+   *        against the appliance
+   */
+  public AsyncGsaClient(GsaClient client, Executor executor,
+                        int maxConcurrentRequests) {
+    if (client == null || executor == null) {
+      throw new NullPointerException("client and executor are required");
+    }
+    if (maxConcurrentRequests <= 0) {
+      throw new IllegalArgumentException(
+          "maxConcurrentRequests must be positive");
+    }
+    this.client = client;
+    this.executor = executor;
+    this.slots = new Semaphore(maxConcurrentRequests);
+  }
+
+  /**
+   * Returns the synchronous client wrapped by this instance.
+   *
+   * @return the wrapped GsaClient
+   */
+  public GsaClient getClient() {
+    return client;
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#getFeed(String)}.
+   *
+   * @param feedName name of the feed
+   * @param callback optional callback, may be {@code null}
+   * @return future holding the feed
+   */
+  public Future<GsaFeed> getFeed(final String feedName,
+                                 Callback<GsaFeed> callback) {
+    return submit(new Callable<GsaFeed>() {
+      public GsaFeed call() throws Exception {
+        return client.getFeed(feedName);
+      }
+    }, callback);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#getFeed(String)}.
+   *
+   * @param feedName name of the feed
+   * @return future holding the feed
+   */
+  public Future<GsaFeed> getFeed(String feedName) {
+    return getFeed(feedName, null);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#queryFeed(String, Map)}.
+   *
+   * @param feedName name of the feed
+   * @param queries map of query parameters
+   * @param callback optional callback, may be {@code null}
+   * @return future holding the filtered feed
+   */
+  public Future<GsaFeed> queryFeed(final String feedName,
+                                   final Map<String, String> queries,
+                                   Callback<GsaFeed> callback) {
+    return submit(new Callable<GsaFeed>() {
+      public GsaFeed call() throws Exception {
+        return client.queryFeed(feedName, queries);
+      }
+    }, callback);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#queryFeed(String, Map)}.
+   *
+   * @param feedName name of the feed
+   * @param queries map of query parameters
+   * @return future holding the filtered feed
+   */
+  public Future<GsaFeed> queryFeed(String feedName,
+                                   Map<String, String> queries) {
+    return queryFeed(feedName, queries, null);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#getEntry(String, String)}.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry to fetch
+   * @param callback optional callback, may be {@code null}
+   * @return future holding the entry
+   */
+  public Future<GsaEntry> getEntry(final String feedName,
+                                   final String entryId,
+                                   Callback<GsaEntry> callback) {
+    return submit(new Callable<GsaEntry>() {
+      public GsaEntry call() throws Exception {
+        return client.getEntry(feedName, entryId);
+      }
+    }, callback);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#getEntry(String, String)}.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry to fetch
+   * @return future holding the entry
+   */
+  public Future<GsaEntry> getEntry(String feedName, String entryId) {
+    return getEntry(feedName, entryId, null);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#queryEntry(String, String, Map)}.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry to fetch
+   * @param queries map of query parameters
+   * @param callback optional callback, may be {@code null}
+   * @return future holding the entry
+   */
+  public Future<GsaEntry> queryEntry(final String feedName,
+                                     final String entryId,
+                                     final Map<String, String> queries,
+                                     Callback<GsaEntry> callback) {
+    return submit(new Callable<GsaEntry>() {
+      public GsaEntry call() throws Exception {
+        return client.queryEntry(feedName, entryId, queries);
+      }
+    }, callback);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#queryEntry(String, String, Map)}.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry to fetch
+   * @param queries map of query parameters
+   * @return future holding the entry
+   */
+  public Future<GsaEntry> queryEntry(String feedName, String entryId,
+                                     Map<String, String> queries) {
+    return queryEntry(feedName, entryId, queries, null);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#insertEntry(String, GsaEntry)}.
+   *
+   * @param feedName name of the feed provider in which to insert the entry
+   * @param entry entry to insert
+   * @param callback optional callback, may be {@code null}
+   * @return future holding the inserted entry
+   */
+  public Future<GsaEntry> insertEntry(final String feedName,
+                                      final GsaEntry entry,
+                                      Callback<GsaEntry> callback) {
+    return submit(new Callable<GsaEntry>() {
+      public GsaEntry call() throws Exception {
+        return client.insertEntry(feedName, entry);
+      }
+    }, callback);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#insertEntry(String, GsaEntry)}.
+   *
+   * @param feedName name of the feed provider in which to insert the entry
+   * @param entry entry to insert
+   * @return future holding the inserted entry
+   */
+  public Future<GsaEntry> insertEntry(String feedName, GsaEntry entry) {
+    return insertEntry(feedName, entry, null);
+  }
+
+  /**
+   * Asynchronous version of
+   * {@link GsaClient#updateEntry(String, String, GsaEntry)}.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry to update
+   * @param updateEntry entry containing the data to update
+   * @param callback optional callback, may be {@code null}
+   * @return future holding the updated entry
+   */
+  public Future<GsaEntry> updateEntry(final String feedName,
+                                      final String entryId,
+                                      final GsaEntry updateEntry,
+                                      Callback<GsaEntry> callback) {
+    return submit(new Callable<GsaEntry>() {
+      public GsaEntry call() throws Exception {
+        return client.updateEntry(feedName, entryId, updateEntry);
+      }
+    }, callback);
+  }
+
+  /**
+   * Asynchronous version of
+   * {@link GsaClient#updateEntry(String, String, GsaEntry)}.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry to update
+   * @param updateEntry entry containing the data to update
+   * @return future holding the updated entry
+   */
+  public Future<GsaEntry> updateEntry(String feedName, String entryId,
+                                      GsaEntry updateEntry) {
+    return updateEntry(feedName, entryId, updateEntry, null);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#deleteEntry(String, String)}.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry to delete
+   * @param callback optional callback, may be {@code null}
+   * @return future that completes with {@code null} once the entry is deleted
+   */
+  public Future<Void> deleteEntry(final String feedName,
+                                  final String entryId,
+                                  Callback<Void> callback) {
+    return submit(new Callable<Void>() {
+      public Void call() throws Exception {
+        client.deleteEntry(feedName, entryId);
+        return null;
+      }
+    }, callback);
+  }
+
+  /**
+   * Asynchronous version of {@link GsaClient#deleteEntry(String, String)}.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry to delete
+   * @return future that completes with {@code null} once the entry is deleted
+   */
+  public Future<Void> deleteEntry(String feedName, String entryId) {
+    return deleteEntry(feedName, entryId, null);
+  }
+
+  /**
+   * Queues a request and dispatches as many queued requests as there are
+   * free slots.
+   */
+  private <T> Future<T> submit(Callable<T> request, Callback<T> callback) {
+    RequestTask<T> task = new RequestTask<T>(request, callback);
+    pending.add(task);
+    dispatch();
+    return task;
+  }
+
+  /**
+   * Hands queued requests to the executor while slots are available.  A slot
+   * is released by the request that holds it, which then dispatches again, so
+   * queued requests never wait on an executor thread.
+   */
+  private void dispatch() {
+    while (!pending.isEmpty() && slots.tryAcquire()) {
+      final Runnable next = pending.poll();
+      if (next == null) {
+        slots.release();
+        continue;
+      }
+      try {
+        executor.execute(new Runnable() {
+          public void run() {
+            try {
+              next.run();
+            } finally {
+              slots.release();
+              dispatch();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        slots.release();
+        ((RequestTask<?>) next).reject(e);
+      }
+    }
+  }
+
+  /**
+   * Future of a single request, notifying the optional callback once done.
+   */
+  private static class RequestTask<T> extends FutureTask<T> {
+
+    private final Callback<T> callback;
+
+    RequestTask(Callable<T> request, Callback<T> callback) {
+      super(request);
+      this.callback = callback;
+    }
+
+    void reject(Throwable cause) {
+      setException(cause);
+    }
+
+    @Override
+    protected void done() {
+      if (callback == null || isCancelled()) {
+        return;
+      }
+      T result;
+      try {
+        result = get();
+      } catch (ExecutionException e) {
+        callback.onFailure(e.getCause());
+        return;
+      } catch (InterruptedException e) {
+        // Cannot happen, the task is done.
+        Thread.currentThread().interrupt();
+        return;
+      }
+      callback.onSuccess(result);
+    }
+  }
+}
@@ -0,0 +1,547 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.enterprise.apis.client;
+
+import com.google.gdata.client.batch.BatchInterruptedException;
+import com.google.gdata.data.batch.BatchInterrupted;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Executes many insert, update and delete operations on a GSA feed.
+ *
+ * The operations are sent in batch feeds of {@link #setBatchSize batchSize}
+ * entries, using the GData {@code batch:} namespace, with at most
+ * {@link #setMaxConcurrentBatches maxConcurrentBatches} batches in flight.
+ * The outcome of each operation is reported as a {@link Result}, in the order
+ * of the operations, rather than as an exception: a failed operation doesn't
+ * prevent the others from running.
+ *
+ * If the appliance doesn't support batch requests, the operations are sent
+ * as individual requests instead, still running concurrently, and the
+ * {@link GsaClient} remembers not to try batches again.  If the batch feed
+ * is not found, which may also mean that the feed is wrong or unavailable,
+ * individual requests are only sent for the current execution.
+ *
+ *
+ */
+public class GsaBatch {
+
+  private static final Logger LOGGER =
+      Logger.getLogger(GsaBatch.class.getName());
+
+  /** Path of the batch feed, relative to the target feed. */
+  public static final String BATCH_PATH = "batch";
+
+  /** Default number of operations per batch. */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  /** Default number of batches in flight. */
+  public static final int DEFAULT_MAX_CONCURRENT_BATCHES = 4;
+
+  /**
+   * Receives the results of the operations as their batches complete.
+   */
+  public interface Listener {
+
+    /**
+     * Called when a batch of operations completed.  This is called from the
+     * thread that ran the batch, possibly concurrently for several batches.
+     *
+     * @param results the results of the operations of the batch
+     */
+    public void onResults(List<Result> results);
+  }
+
+  /**
+   * An operation on an entry of the feed.
+   */
+  public static class Operation {
+
+    private final BatchOperationType type;
+    private final String entryId;
+    private final GsaEntry entry;
+
+    private Operation(BatchOperationType type, String entryId,
+                      GsaEntry entry) {
+      this.type = type;
+      this.entryId = entryId;
+      this.entry = entry;
+    }
+
+    /**
+     * Creates an operation inserting an entry.
+     *
+     * @param entry entry to insert
+     * @return the insert operation
+     */
+    public static Operation insert(GsaEntry entry) {
+      if (entry == null) {
+        throw new NullPointerException("entry is required");
+      }
+      return new Operation(BatchOperationType.INSERT, null, entry);
+    }
+
+    /**
+     * Creates an operation updating an entry.
+     *
+     * @param entryId ID of the entry to update
+     * @param entry entry containing the data to update
+     * @return the update operation
+     */
+    public static Operation update(String entryId, GsaEntry entry) {
+      if (entryId == null || entry == null) {
+        throw new NullPointerException("entryId and entry are required");
+      }
+      return new Operation(BatchOperationType.UPDATE, entryId, entry);
+    }
+
+    /**
+     * Creates an operation deleting an entry.
+     *
+     * @param entryId ID of the entry to delete
+     * @return the delete operation
+     */
+    public static Operation delete(String entryId) {
+      if (entryId == null) {
+        throw new NullPointerException("entryId is required");
+      }
+      return new Operation(BatchOperationType.DELETE, entryId, null);
+    }
+
+    public BatchOperationType getType() {
+      return type;
+    }
+
+    /** Returns the ID of the updated or deleted entry, {@code null} for inserts. */
+    public String getEntryId() {
+      return entryId;
+    }
+
+    /** Returns the inserted or updated entry, {@code null} for deletes. */
+    public GsaEntry getEntry() {
+      return entry;
+    }
+
+    @Override
+    public String toString() {
+      return type + (entryId == null ? "" : " " + entryId);
+    }
+  }
+
+  /**
+   * The outcome of an {@link Operation}.
+   */
+  public static class Result {
+
+    private final Operation operation;
+    private final boolean success;
+    private final int code;
+    private final String reason;
+    private final GsaEntry entry;
+    private final Exception exception;
+
+    Result(Operation operation, boolean success, int code, String reason,
+           GsaEntry entry, Exception exception) {
+      this.operation = operation;
+      this.success = success;
+      this.code = code;
+      this.reason = reason;
+      this.entry = entry;
+      this.exception = exception;
+    }
+
+    public Operation getOperation() {
+      return operation;
+    }
+
+    /** Returns whether the operation succeeded. */
+    public boolean isSuccess() {
+      return success;
+    }
+
+    /**
+     * Returns the HTTP status code of the operation, as reported by its
+     * {@link BatchStatus}, or -1 if the operation didn't get a response.
+     */
+    public int getCode() {
+      return code;
+    }
+
+    /** Returns the reason of the status, if any. */
+    public String getReason() {
+      return reason;
+    }
+
+    /**
+     * Returns the entry returned by the appliance for a successful insert or
+     * update, or {@code null}.
+     */
+    public GsaEntry getEntry() {
+      return entry;
+    }
+
+    /**
+     * Returns the exception that made the operation fail, or {@code null} if
+     * the failure was reported by a {@link BatchStatus}.
+     */
+    public Exception getException() {
+      return exception;
+    }
+
+    @Override
+    public String toString() {
+      return operation + ": " + (success ? "OK" : "FAILED") + " " + code
+          + (reason == null ? "" : " " + reason);
+    }
+  }
+
+  private final GsaClient client;
+  private final String feedName;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private int maxConcurrentBatches = DEFAULT_MAX_CONCURRENT_BATCHES;
+  private Executor executor;
+  private Listener listener;
+
+  /**
+   * Creates a batch of operations on a feed.
+   *
+   * @param client the client connected to the appliance
+   * @param feedName name of the feed, for example
+   *        {@link Terms#FEED_POLICY_ACLS}
+   */
+  public GsaBatch(GsaClient client, String feedName) {
+    if (client == null || feedName == null) {
+      throw new NullPointerException("client and feedName are required");
+    }
+    this.client = client;
+    this.feedName = feedName;
+  }
+
+  /**
+   * Sets the number of operations sent in each batch request.
+   *
+   * @param batchSize number of operations per batch, at least 1
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    this.batchSize = batchSize;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the maximum number of batches, or individual requests when batches
+   * aren't supported, in flight against the appliance.
+   *
+   * @param maxConcurrentBatches maximum number of concurrent requests, at
+   *        least 1
+   */
+  public void setMaxConcurrentBatches(int maxConcurrentBatches) {
+    if (maxConcurrentBatches <= 0) {
+      throw new IllegalArgumentException(
+          "maxConcurrentBatches must be positive");
+    }
+    this.maxConcurrentBatches = maxConcurrentBatches;
+  }
+
+  public int getMaxConcurrentBatches() {
+    return maxConcurrentBatches;
+  }
+
+  /**
+   * Sets the executor running the concurrent requests.  The calling thread
+   * always runs requests too.  By default, threads are created for the
+   * duration of {@link #execute}.
+   *
+   * @param executor executor running the requests, or {@code null}
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Sets the listener notified as each batch completes, for example to report
+   * progress.
+   *
+   * @param listener listener of the batch results, or {@code null}
+   */
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Executes operations and waits for their completion.
+   *
+   * @param operations the operations to execute
+   * @return the result of each operation, in the order of the operations
+   * @throws InterruptedIOException if the calling thread is interrupted
+   *         while waiting for the requests
+   */
+  public List<Result> execute(List<Operation> operations)
+      throws InterruptedIOException {
+
+    final Operation[] ops = operations.toArray(new Operation[0]);
+    final Result[] results = new Result[ops.length];
+    final AtomicBoolean batchNotFound = new AtomicBoolean();
+
+    final Queue<int[]> chunks = new ConcurrentLinkedQueue<int[]>();
+    for (int start = 0; start < ops.length; start += batchSize) {
+      chunks.add(new int[] { start, Math.min(ops.length, start + batchSize) });
+    }
+
+    int workers = Math.min(maxConcurrentBatches, chunks.size());
+    if (workers == 0) {
+      return new ArrayList<Result>();
+    }
+
+    // Each worker takes chunks from the queue until it is empty, so at most
+    // one request per worker is in flight.
+    final CountDownLatch done = new CountDownLatch(workers - 1);
+    Runnable worker = new Runnable() {
+      public void run() {
+        try {
+          int[] chunk;
+          while ((chunk = chunks.poll()) != null) {
+            execute(ops, results, chunk[0], chunk[1], batchNotFound);
+          }
+        } finally {
+          done.countDown();
+        }
+      }
+    };
+
+    ExecutorService ownExecutor = null;
+    Executor workerExecutor = executor;
+    if (workerExecutor == null && workers > 1) {
+      ownExecutor = Executors.newFixedThreadPool(workers - 1);
+      workerExecutor = ownExecutor;
+    }
+    try {
+      for (int i = 1; i < workers; i++) {
+        workerExecutor.execute(worker);
+      }
+
+      // The calling thread works too.
+      int[] chunk;
+      while ((chunk = chunks.poll()) != null) {
+        execute(ops, results, chunk[0], chunk[1], batchNotFound);
+      }
+      done.await();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      chunks.clear();
+      InterruptedIOException ie =
+          new InterruptedIOException("Interrupted while executing batch");
+      ie.initCause(e);
+      throw ie;
+    } finally {
+      if (ownExecutor != null) {
+        ownExecutor.shutdown();
+      }
+    }
+
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Executes the operations between {@code start} and {@code end} and
+   * notifies the listener.
+   */
+  private void execute(Operation[] ops, Result[] results, int start, int end,
+                       AtomicBoolean batchNotFound) {
+    executeChunk(ops, results, start, end, batchNotFound);
+    if (listener != null) {
+      listener.onResults(Arrays.asList(results).subList(start, end));
+    }
+  }
+
+  /**
+   * Executes the operations between {@code start} and {@code end}.
+   *
+   * @param batchNotFound set once the batch feed is not found, so that the
+   *        other chunks of the execution are sent as individual requests
+   */
+  private void executeChunk(Operation[] ops, Result[] results, int start,
+                            int end, AtomicBoolean batchNotFound) {
+
+    if (client.isBatchSupported() && !batchNotFound.get()) {
+      try {
+        executeBatch(ops, results, start, end);
+        return;
+      } catch (ServiceException e) {
+        int code = e.getHttpErrorCodeOverride();
+        if (isBatchUnsupported(code)) {
+          LOGGER.info("Batch requests not supported by " + client.getAddress()
+              + " (" + e.getMessage() + "), sending individual requests");
+          client.setBatchSupported(false);
+        } else if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+          // May also be a wrong or unavailable feed, so batches are tried
+          // again by the next execution.
+          LOGGER.info("Batch feed of " + feedName + " not found on "
+              + client.getAddress() + " (" + e.getMessage()
+              + "), sending individual requests");
+          batchNotFound.set(true);
+        } else {
+          fail(ops, results, start, end, e);
+          return;
+        }
+      } catch (IOException e) {
+        fail(ops, results, start, end, e);
+        return;
+      }
+    }
+
+    for (int i = start; i < end; i++) {
+      results[i] = executeSingle(ops[i]);
+    }
+  }
+
+  /** Sends the operations between {@code start} and {@code end} as a batch. */
+  private void executeBatch(Operation[] ops, Result[] results, int start,
+                            int end) throws ServiceException, IOException {
+
+    GsaFeed batchFeed = new GsaFeed();
+    for (int i = start; i < end; i++) {
+      Operation op = ops[i];
+      GsaEntry entry = new GsaEntry();
+      if (op.getEntry() != null) {
+        for (Map.Entry<String, String> content :
+            op.getEntry().getGsaContentsView().entrySet()) {
+          entry.addGsaContent(content.getKey(), content.getValue());
+        }
+      }
+      if (op.getEntryId() != null) {
+        entry.setId(client.getEntryUrl(feedName, op.getEntryId()).toString());
+      }
+      BatchUtils.setBatchId(entry, String.valueOf(i));
+      BatchUtils.setBatchOperationType(entry, op.getType());
+      batchFeed.getEntries().add(entry);
+    }
+
+    GsaFeed resultFeed;
+    BatchInterrupted interrupted = null;
+    try {
+      resultFeed = client.getService().batch(
+          client.getFeedUrl(feedName + "/" + BATCH_PATH), batchFeed);
+    } catch (BatchInterruptedException e) {
+      resultFeed = (GsaFeed) e.getFeed();
+      interrupted = e.getBatchInterrupted();
+    }
+
+    for (GsaEntry entry : resultFeed.getEntries()) {
+      String batchId = BatchUtils.getBatchId(entry);
+      int index;
+      try {
+        index = batchId == null ? -1 : Integer.parseInt(batchId);
+      } catch (NumberFormatException e) {
+        index = -1;
+      }
+      if (index < start || index >= end) {
+        continue;
+      }
+      BatchStatus status = BatchUtils.getBatchStatus(entry);
+      boolean success = BatchUtils.isSuccess(entry);
+      results[index] = new Result(ops[index], success,
+          status == null ? -1 : status.getCode(),
+          status == null ? null : status.getReason(),
+          success && ops[index].getType() != BatchOperationType.DELETE
+              ? entry : null,
+          null);
+    }
+
+    // Operations without response were skipped by the appliance.
+    String reason = interrupted != null ? interrupted.getReason()
+        : "No response for batch operation";
+    for (int i = start; i < end; i++) {
+      if (results[i] == null) {
+        results[i] = new Result(ops[i], false, -1, reason, null, null);
+      }
+    }
+  }
+
+  /** Sends an operation as an individual request. */
+  private Result executeSingle(Operation op) {
+    try {
+      switch (op.getType()) {
+        case INSERT:
+          return new Result(op, true, HttpURLConnection.HTTP_CREATED, null,
+              client.insertEntry(feedName, op.getEntry()), null);
+        case UPDATE:
+          return new Result(op, true, HttpURLConnection.HTTP_OK, null,
+              client.updateEntry(feedName, op.getEntryId(), op.getEntry()),
+              null);
+        case DELETE:
+          client.deleteEntry(feedName, op.getEntryId());
+          return new Result(op, true, HttpURLConnection.HTTP_OK, null, null,
+              null);
+        default:
+          throw new IllegalArgumentException(
+              "Unsupported operation: " + op.getType());
+      }
+    } catch (ServiceException e) {
+      return failure(op, e);
+    } catch (IOException e) {
+      return failure(op, e);
+    }
+  }
+
+  /**
+   * Returns whether a batch failed with a status meaning that the appliance
+   * doesn't support batches.
+   */
+  private static boolean isBatchUnsupported(int code) {
+    return code == HttpURLConnection.HTTP_BAD_METHOD
+        || code == HttpURLConnection.HTTP_NOT_IMPLEMENTED;
+  }
+
+  private static void fail(Operation[] ops, Result[] results, int start,
+                           int end, Exception e) {
+    for (int i = start; i < end; i++) {
+      results[i] = failure(ops[i], e);
+    }
+  }
+
+  private static Result failure(Operation op, Exception e) {
+    int code = e instanceof ServiceException
+        ? ((ServiceException) e).getHttpErrorCodeOverride() : -1;
+    return new Result(op, false, code, e.getMessage(), null, e);
+  }
+}
@@ -18,14 +18,25 @@ package com.google.enterprise.apis.client;
 
 import com.google.gdata.util.common.base.CharEscapers;
 import com.google.gdata.client.Query;
+import com.google.gdata.client.Service;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.ExtensionProfile;
 import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.NotModifiedException;
 import com.google.gdata.util.ServiceException;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Simple, thin implementation of the GsaClient interface.
@@ -45,6 +56,31 @@ public class GsaClient {
   private String httpPort;
   private String gsaUrlStr;
   private GsaService service;
+  private volatile boolean batchSupported = true;
+  private volatile ResponseCache responseCache;
+
+  /**
+   * Bounded cache of the feeds and entries fetched, by URL, evicting the
+   * least recently used ones.
+   */
+  private static class ResponseCache
+      extends LinkedHashMap<String, Service.ValidatedResource<?>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxEntries;
+
+    ResponseCache(int maxEntries) {
+      super(16, 0.75f, true);
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(
+        Map.Entry<String, Service.ValidatedResource<?>> eldest) {
+      return size() > maxEntries;
+    }
+  }
 
   //This constructor will never be invoked
   @SuppressWarnings("unused")
@@ -90,12 +126,180 @@ public class GsaClient {
    */
   public GsaClient(String protocol, String addr, int port, String userId, String userPwd)
       throws AuthenticationException {
+    this(protocol, addr, port, null);
+    service.setUserCredentials(userId, userPwd);
+  }
+
+  /**
+   * Constructs an instance connecting to the GSA server, without credentials.
+   * The service declares its own extension profile if {@code extProfile} is
+   * {@code null}.
+   */
+  private GsaClient(String protocol, String addr, int port,
+                    ExtensionProfile extProfile) {
     this.address = addr;
     this.httpPort = String.valueOf(port);
     this.gsaUrlStr = protocol + "://" + 
                      address + ":" + httpPort + "/" + FEED_HEADER;
-    this.service = new GsaService(APP_NAME, protocol, address + ":" + httpPort);
-    service.setUserCredentials(userId, userPwd);
+    String domainName = address + ":" + httpPort;
+    this.service = (extProfile == null)
+        ? new GsaService(APP_NAME, protocol, domainName)
+        : new GsaService(APP_NAME, protocol, domainName, extProfile);
+  }
+
+  /**
+   * Builds clients that don't log in when they are constructed, so that
+   * connecting to many appliances doesn't take one login after the other.
+   * A client built by {@link #build()} logs in when it sends its first
+   * request, and {@link #buildAndAuthenticate(Executor)} starts the login
+   * on an executor, so that the logins of several appliances run in
+   * parallel.  With a {@link GsaTokenCache}, a client reuses the token of a
+   * previous client for the same appliance and user, and only logs in when
+   * its session has expired.
+   *
+   * <pre>
+   *   GsaClient client = new GsaClient.Builder(address)
+   *       .setPort(8000)
+   *       .setCredentials(userId, userPwd)
+   *       .setTokenCache(tokenCache)
+   *       .build();
+   * </pre>
+   */
+  public static class Builder {
+
+    private final String address;
+    private String protocol = HTTP_DEFAULT_PROTOCOL;
+    private int port = DEFAULT_HTTP_PORT;
+    private String userId;
+    private String userPwd;
+    private GsaTokenCache tokenCache;
+    private ExtensionProfile extProfile;
+
+    /**
+     * Creates a builder of clients connecting to the GSA server with address
+     * {@code addr}, default port and default protocol.
+     *
+     * @param addr the address of the GSA server
+     */
+    public Builder(String addr) {
+      if (addr == null) {
+        throw new NullPointerException("address is required");
+      }
+      this.address = addr;
+    }
+
+    /**
+     * Sets the protocol of the GSA server.
+     *
+     * @param protocol the protocol of the GSA server
+     */
+    public Builder setProtocol(String protocol) {
+      this.protocol = protocol;
+      return this;
+    }
+
+    /**
+     * Sets the port of the GSA server.
+     *
+     * @param port the port of the GSA server
+     */
+    public Builder setPort(int port) {
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * Sets the credentials of the user, which are required.
+     *
+     * @param userId the name of the user
+     * @param userPwd the password of the user
+     */
+    public Builder setCredentials(String userId, String userPwd) {
+      this.userId = userId;
+      this.userPwd = userPwd;
+      return this;
+    }
+
+    /**
+     * Sets the cache sharing tokens between the clients of the same
+     * appliance and user.
+     *
+     * @param tokenCache the cache of tokens, or {@code null} for none
+     */
+    public Builder setTokenCache(GsaTokenCache tokenCache) {
+      this.tokenCache = tokenCache;
+      return this;
+    }
+
+    /**
+     * Sets the extension profile used by the service of the client, instead
+     * of a profile of its own.  Clients of many appliances can share
+     * {@link GsaService#getSharedExtensionProfile()}, which is read without
+     * locking but can't be modified.
+     *
+     * @param extProfile the extension profile, or {@code null} to declare
+     *        one for the client
+     */
+    public Builder setExtensionProfile(ExtensionProfile extProfile) {
+      this.extProfile = extProfile;
+      return this;
+    }
+
+    /**
+     * Creates a client, which logs in when it sends its first request unless
+     * a cached token is available.  This doesn't send any request.
+     *
+     * @return the client
+     */
+    public GsaClient build() {
+      if (userId == null || userPwd == null) {
+        throw new IllegalStateException("credentials are required");
+      }
+      GsaClient client = new GsaClient(protocol, address, port, extProfile);
+      GsaService service = client.getService();
+      service.setDeferredUserCredentials(userId, userPwd);
+      if (tokenCache != null) {
+        String host = address + ":" + port;
+        String token = tokenCache.getToken(host, userId);
+        if (token != null) {
+          service.setUserToken(token);
+        }
+        service.setTokenCache(tokenCache, host, userId);
+      }
+      return client;
+    }
+
+    /**
+     * Creates a client, and starts its login on an executor.  Requests sent
+     * by the client before the login completes wait for it.
+     *
+     * @param executor the executor running the login
+     * @return the client, once it is authenticated; the future fails with
+     *         the {@link ServiceException} of the login if it failed
+     */
+    public Future<GsaClient> buildAndAuthenticate(Executor executor) {
+      final GsaClient client = build();
+      FutureTask<GsaClient> login = new FutureTask<GsaClient>(
+          new Callable<GsaClient>() {
+            public GsaClient call() throws ServiceException {
+              client.authenticate();
+              return client;
+            }
+          });
+      executor.execute(login);
+      return login;
+    }
+  }
+
+  /**
+   * Logs in now if the client was built without authenticating and has no
+   * token yet; otherwise does nothing.
+   *
+   * @throws ServiceException if authentication failed
+   * @see Builder
+   */
+  public void authenticate() throws ServiceException {
+    service.authenticate();
   }
 
   /**
@@ -105,7 +309,7 @@ public class GsaClient {
    * @return a URL by concatenating feed name with header, address, port, etc.
    * @throws MalformedURLException
    */
-  private URL getFeedUrl(String feedName) throws MalformedURLException {
+  URL getFeedUrl(String feedName) throws MalformedURLException {
     if (feedName == null) {
       throw new MalformedURLException("feed is not specified");
     }
@@ -120,7 +324,7 @@ public class GsaClient {
    * @return a URL by concatenating different parts of the URI
    * @throws MalformedURLException
    */
-  private URL getEntryUrl(String feedName, String entryId) throws MalformedURLException {
+  URL getEntryUrl(String feedName, String entryId) throws MalformedURLException {
     if (feedName == null || entryId == null) {
       throw new MalformedURLException("feed/entry is not specified");
     }
@@ -169,7 +373,7 @@ public class GsaClient {
     URL feedUrl = getFeedUrl(feedName);
     
     // Send the request and receive the response:
-    GsaFeed myFeed = service.getFeed(feedUrl, GsaFeed.class);
+    GsaFeed myFeed = fetchFeed(feedUrl);
     return myFeed;
   }
 
@@ -192,10 +396,94 @@ public class GsaClient {
       query.setStringCustomParameter(q.getKey(), q.getValue());
     }
 
-    GsaFeed resultsFeed = service.query(query, GsaFeed.class);
+    GsaFeed resultsFeed = responseCache == null
+        ? service.query(query, GsaFeed.class) : fetchFeed(query.getUrl());
     return resultsFeed;
   }
 
+  /**
+   * Streams the entries of a feed to a listener as they are parsed, instead
+   * of collecting them into the returned feed.  Memory use is bounded by the
+   * size of a single entry, which makes this suitable for large feeds such as
+   * policy ACLs or diagnostics.
+   *
+   * @param feedName name of the feed
+   * @param listener listener receiving each entry once it is parsed
+   * @return a feed holding the feed-level data, without entries
+   * @throws MalformedURLException
+   * @throws ServiceException
+   * @throws IOException
+   */
+  public GsaFeed streamFeed(String feedName,
+                            BaseFeed.EntryListener<? super GsaEntry> listener)
+                            throws MalformedURLException, ServiceException, IOException {
+    URL feedUrl = getFeedUrl(feedName);
+    return service.streamFeed(feedUrl, GsaFeed.class, listener);
+  }
+
+  /**
+   * Streams the entries of a feed, filtered based on the query parameters,
+   * to a listener as they are parsed.
+   *
+   * @param feedName name of the feed
+   * @param queries map of query parameters
+   * @param listener listener receiving each entry once it is parsed
+   * @return a feed holding the feed-level data, without entries
+   * @throws MalformedURLException
+   * @throws ServiceException
+   * @throws IOException
+   */
+  public GsaFeed streamFeed(String feedName, Map<String, String> queries,
+                            BaseFeed.EntryListener<? super GsaEntry> listener)
+                            throws MalformedURLException, ServiceException, IOException {
+    URL feedUrl = getFeedUrl(feedName);
+    Query query = new Query(feedUrl);
+
+    for (Entry<String, String> q : queries.entrySet()) {
+      query.setStringCustomParameter(q.getKey(), q.getValue());
+    }
+
+    return service.streamFeed(query, GsaFeed.class, listener);
+  }
+
+  /**
+   * Returns the entries of all pages of a paged feed, such as the policy
+   * ACLs or crawl diagnostics feed.  Pages are requested lazily and
+   * prefetched in the background while the entries are consumed.  A loop
+   * that may stop before the last entry, by {@code break} or by an
+   * exception, must iterate with {@link PagedGsaFeed#iterator()} and
+   * {@link PagedGsaFeed.PageIterator#close() close} the iterator in a
+   * {@code finally} block, since a for-each loop never closes it.
+   *
+   * @param feedName name of the feed
+   * @param queries map of query parameters, may include the initial
+   *        page position and the page size
+   * @return lazy view of the entries of all pages
+   * @see PagedGsaFeed
+   */
+  public PagedGsaFeed pageFeed(String feedName, Map<String, String> queries) {
+    return new PagedGsaFeed(this, feedName, null, queries);
+  }
+
+  /**
+   * Returns all pages of a paged entry, such as the KeyMatch or synonym
+   * settings of a front end or a log, one entry per page.  Pages are
+   * requested lazily and prefetched in the background while they are
+   * consumed.  As with {@link #pageFeed}, a loop that may stop early must
+   * close its iterator.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry
+   * @param queries map of query parameters, may include the initial
+   *        line and the page size
+   * @return lazy view of the pages of the entry
+   * @see PagedGsaFeed
+   */
+  public PagedGsaFeed pageEntry(String feedName, String entryId,
+                                Map<String, String> queries) {
+    return new PagedGsaFeed(this, feedName, entryId, queries);
+  }
+
   /**
    * Inserts an entry into a feed provider.
    * 
@@ -209,6 +497,7 @@ public class GsaClient {
                               throws ServiceException, IOException {
     URL feedUrl = getFeedUrl(feedName);
     GsaEntry insertedEntry = service.insert(feedUrl, entry);
+    invalidateCache(feedName);
     return insertedEntry;
   }
   
@@ -225,7 +514,7 @@ public class GsaClient {
   public GsaEntry getEntry(String feedName, String entryId) 
       throws MalformedURLException, ServiceException, IOException {
     URL entryUrl = getEntryUrl(feedName, entryId);
-    GsaEntry retrievedEntry = service.getEntry(entryUrl, GsaEntry.class);
+    GsaEntry retrievedEntry = fetchEntry(entryUrl);
     return retrievedEntry;
   }
 
@@ -244,7 +533,7 @@ public class GsaClient {
   public GsaEntry queryEntry(String feedName, String entryId, Map<String, String> queries)
       throws MalformedURLException, ServiceException, IOException {
     URL entryUrl = getEntryUrl(feedName, entryId, queries);
-    GsaEntry retrievedEntry = service.getEntry(entryUrl, GsaEntry.class);
+    GsaEntry retrievedEntry = fetchEntry(entryUrl);
     return retrievedEntry;
   }
 
@@ -263,6 +552,7 @@ public class GsaClient {
                               throws MalformedURLException, ServiceException, IOException {
     URL editUrl = getEntryUrl(feedName, entryId);
     GsaEntry updatedEntry = service.update(editUrl, updateEntry);
+    invalidateCache(feedName);
     return updatedEntry;
   }
 
@@ -279,6 +569,177 @@ public class GsaClient {
                                                                   ServiceException, IOException {
     URL deleteUrl = getEntryUrl(feedName, entryId);
     service.delete(deleteUrl);
+    invalidateCache(feedName);
+  }
+
+  /**
+   * Inserts, updates and deletes entries of a feed provider in batches, with
+   * the default batch size and concurrency of {@link GsaBatch}.  Use a
+   * {@link GsaBatch} directly to change them.
+   * 
+   * @param feedName name of the feed containing the entries
+   * @param operations the operations to execute
+   * @return the result of each operation, in the order of the operations
+   * @throws IOException if interrupted while waiting for the results; the
+   *         failures of the operations are reported in the results
+   */
+  public List<GsaBatch.Result> batch(String feedName,
+                                     List<GsaBatch.Operation> operations)
+                                     throws IOException {
+    List<GsaBatch.Result> results =
+        new GsaBatch(this, feedName).execute(operations);
+    invalidateCache(feedName);
+    return results;
+  }
+
+  /**
+   * Returns whether batch requests are sent to the appliance.  This becomes
+   * {@code false} when the appliance rejects a batch request as unsupported,
+   * with a 405 or 501 status.
+   * 
+   * @return whether batch requests are sent to the appliance
+   */
+  public boolean isBatchSupported() {
+    return batchSupported;
+  }
+
+  /**
+   * Sets whether batch requests are sent to the appliance.  If not,
+   * {@link #batch} sends individual requests.
+   * 
+   * @param batchSupported whether to send batch requests
+   */
+  public void setBatchSupported(boolean batchSupported) {
+    this.batchSupported = batchSupported;
+  }
+
+  /**
+   * Enables caching of the feeds and entries returned by {@link #getFeed},
+   * {@link #queryFeed}, {@link #getEntry} and {@link #queryEntry}.  A cached
+   * response is revalidated with a conditional request, using its entity
+   * tag and last modification date, and reused if the appliance answers that
+   * it is not modified, which avoids transferring and parsing it again.
+   * Responses without validators are not cached.  Inserting, updating or
+   * deleting entries through this client drops the cached responses of the
+   * feed.
+   * 
+   * Cached feeds and entries are returned to every caller asking for them,
+   * so they must not be modified.  They can be read by several threads at
+   * once.  Caching is disabled by default.
+   * 
+   * @param maxEntries maximum number of responses cached, the least
+   *        recently used ones being evicted; 0 disables caching
+   */
+  public void setCacheSize(int maxEntries) {
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("maxEntries must not be negative");
+    }
+    responseCache = maxEntries == 0 ? null : new ResponseCache(maxEntries);
+  }
+
+  /**
+   * Drops all the cached responses.
+   */
+  public void clearCache() {
+    ResponseCache cache = responseCache;
+    if (cache != null) {
+      synchronized (cache) {
+        cache.clear();
+      }
+    }
+  }
+
+  /**
+   * Fetches a feed, revalidating the cached response if any.
+   */
+  private GsaFeed fetchFeed(URL feedUrl) throws ServiceException, IOException {
+    ResponseCache cache = responseCache;
+    if (cache == null) {
+      return service.getFeed(feedUrl, GsaFeed.class);
+    }
+    String key = feedUrl.toString();
+    Service.ValidatedResource<?> cached = getCached(cache, key);
+    if (cached != null && !(cached.getResource() instanceof GsaFeed)) {
+      cached = null;
+    }
+    try {
+      Service.ValidatedResource<GsaFeed> response = service.getValidatedFeed(
+          feedUrl, GsaFeed.class,
+          cached == null ? null : cached.getEtag(),
+          cached == null ? null : cached.getLastModified());
+      putCached(cache, key, response);
+      return response.getResource();
+    } catch (NotModifiedException e) {
+      if (cached == null) {
+        throw e;
+      }
+      return (GsaFeed) cached.getResource();
+    }
+  }
+
+  /**
+   * Fetches an entry, revalidating the cached response if any.
+   */
+  private GsaEntry fetchEntry(URL entryUrl)
+      throws ServiceException, IOException {
+    ResponseCache cache = responseCache;
+    if (cache == null) {
+      return service.getEntry(entryUrl, GsaEntry.class);
+    }
+    String key = entryUrl.toString();
+    Service.ValidatedResource<?> cached = getCached(cache, key);
+    if (cached != null && !(cached.getResource() instanceof GsaEntry)) {
+      cached = null;
+    }
+    try {
+      Service.ValidatedResource<GsaEntry> response =
+          service.getValidatedEntry(entryUrl, GsaEntry.class,
+              cached == null ? null : cached.getEtag(),
+              cached == null ? null : cached.getLastModified());
+      putCached(cache, key, response);
+      return response.getResource();
+    } catch (NotModifiedException e) {
+      if (cached == null) {
+        throw e;
+      }
+      return (GsaEntry) cached.getResource();
+    }
+  }
+
+  private static Service.ValidatedResource<?> getCached(ResponseCache cache,
+                                                        String key) {
+    synchronized (cache) {
+      return cache.get(key);
+    }
+  }
+
+  private static void putCached(ResponseCache cache, String key,
+                                Service.ValidatedResource<?> response) {
+    synchronized (cache) {
+      if (response.hasValidators()) {
+        cache.put(key, response);
+      } else {
+        cache.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Drops the cached responses of a feed and its entries.
+   */
+  private void invalidateCache(String feedName) {
+    ResponseCache cache = responseCache;
+    if (cache == null) {
+      return;
+    }
+    String prefix = gsaUrlStr + "/" + feedName;
+    synchronized (cache) {
+      for (Iterator<String> it = cache.keySet().iterator(); it.hasNext();) {
+        if (it.next().startsWith(prefix)) {
+          it.remove();
+        }
+      }
+    }
   }
 
   /**
@@ -290,6 +751,16 @@ public class GsaClient {
     return address;
   }
 
+  /**
+   * Returns the underlying service, for example to install an alternate
+   * request factory with {@link GsaService#setRequestFactory}.
+   * 
+   * @return the GsaService used by this client
+   */
+  public GsaService getService() {
+    return service;
+  }
+
   /**
    * Returns the Gsa Url String used to construct this GSA Feed.
    * 
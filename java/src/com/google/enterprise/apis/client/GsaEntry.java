@@ -17,11 +17,16 @@
 package com.google.enterprise.apis.client;
 
 import com.google.gdata.data.appsforyourdomain.generic.GenericEntry;
+import com.google.gdata.data.Extension;
 import com.google.gdata.data.ExtensionProfile;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Base entry class for the Google Search Appliance API.
@@ -34,8 +39,40 @@ import java.util.Map;
  */
 public class GsaEntry extends GenericEntry {
 
+  /**
+   * Extensions by content name, built on demand from the extension list and
+   * {@code null} when it needs to be rebuilt.  Entries cached by
+   * {@link GsaClient} are read by many threads, so lookups build a new index
+   * and publish it in a single write, and never drop it.
+   */
+  private volatile ContentIndex contentIndex;
+
+  /** Read-only view of the content data, backed by the index. */
+  private volatile Map<String, String> contentView;
+
+  /**
+   * Extensions by content name, with the extension list and list size that
+   * they were indexed from.
+   */
+  private static class ContentIndex {
+
+    final Map<String, GsaExtension> extensions;
+    final List<GsaExtension> list;
+    final int size;
+
+    ContentIndex(Map<String, GsaExtension> extensions,
+        List<GsaExtension> list) {
+      this.extensions = extensions;
+      this.list = list;
+      this.size = list.size();
+    }
+  }
+
   public GsaEntry() {
     super();
+    // Create the extension list now, so lookups don't add it to the
+    // extension map of an entry shared with other threads.
+    getRepeatingExtension(GsaExtension.class);
   }
 
   @Override
@@ -61,7 +98,20 @@ public class GsaEntry extends GenericEntry {
     GsaExtension extension = new GsaExtension();
     extension.setContentName(name);
     extension.setContentValue(content);
-    getRepeatingExtension(GsaExtension.class).add(extension);
+    extension.setOwner(this);
+    List<GsaExtension> extensions = getRepeatingExtension(GsaExtension.class);
+    ContentIndex index = contentIndex;
+    boolean indexed = isIndexValid(index, extensions);
+    extensions.add(extension);
+    if (indexed) {
+      // Keep the index current, the first extension with a name wins.  The
+      // map is updated in place, since an entry must not be modified while
+      // other threads read it.
+      if (!index.extensions.containsKey(name)) {
+        index.extensions.put(name, extension);
+      }
+      contentIndex = new ContentIndex(index.extensions, extensions);
+    }
   }
 
   /**
@@ -74,14 +124,13 @@ public class GsaEntry extends GenericEntry {
    * @return String value of the content data
    */
   public String getGsaContent(String name) {
-    
-    for (GsaExtension extension : getRepeatingExtension(GsaExtension.class)) {
-      if (extension.getContentName().equals(name)) {
-        return extension.getContentValue();
-      }
+    GsaExtension extension = getContentIndex().get(name);
+    if (extension != null && !name.equals(extension.getContentName())) {
+      // The extension was renamed after the index was built.
+      extension = buildContentIndex(
+          getRepeatingExtension(GsaExtension.class)).get(name);
     }
-    
-    return null;
+    return (extension != null) ? extension.getContentValue() : null;
   }
 
   /**
@@ -92,14 +141,21 @@ public class GsaEntry extends GenericEntry {
    * @param name all extension having this input name will be removed
    */
   public void removeGsaContent(String name) {
+    Map<String, GsaExtension> index = getContentIndex();
+    if (!index.containsKey(name)) {
+      return;
+    }
 
-    Iterator<GsaExtension> i = getRepeatingExtension(GsaExtension.class).iterator();
+    List<GsaExtension> extensions = getRepeatingExtension(GsaExtension.class);
+    Iterator<GsaExtension> i = extensions.iterator();
     while (i.hasNext()) {
       GsaExtension extension = i.next();
       if (extension.getContentName().equals(name)) {
         i.remove();
       }
     }
+    index.remove(name);
+    contentIndex = new ContentIndex(index, extensions);
   }
   
   /**
@@ -125,5 +181,187 @@ public class GsaEntry extends GenericEntry {
     return returnMap;
   }
 
+  /**
+   * Returns a read-only view of the content data of this GsaEntry's
+   * extensions, by extension name, without copying it.  The view is backed
+   * by the name index of this entry and reflects later changes to it.  If
+   * there are repeating extensions with the same name, the view holds the
+   * content data returned by {@link #getGsaContent}.
+   *
+   * @return read-only Map of the entry's extension content data
+   */
+  public Map<String, String> getGsaContentsView() {
+    if (contentView == null) {
+      contentView = new ContentMap();
+    }
+    return contentView;
+  }
+
+  @Override
+  protected void addRepeatingExtension(Extension ext,
+      Class<? extends Extension> extClass) {
+    super.addRepeatingExtension(ext, extClass);
+    // Parsed extensions only get their name after being added.
+    contentIndex = null;
+  }
+
+  /**
+   * Called by an extension of this entry when its name changes, so the next
+   * lookup rebuilds the index.
+   */
+  void contentNameChanged() {
+    contentIndex = null;
+  }
+
+  @Override
+  public void removeRepeatingExtension(Extension ext) {
+    super.removeRepeatingExtension(ext);
+    contentIndex = null;
+  }
+
+  /**
+   * Returns whether the index matches the current extension list.  Changes
+   * made through this class keep the index current; other changes to the
+   * list are detected through the list identity and size.
+   */
+  private static boolean isIndexValid(ContentIndex index,
+      List<GsaExtension> extensions) {
+    return index != null
+        && index.list == extensions
+        && index.size == extensions.size();
+  }
+
+  /**
+   * Returns the index of the extensions by content name, rebuilding it if
+   * the extension list changed.
+   */
+  private Map<String, GsaExtension> getContentIndex() {
+    List<GsaExtension> extensions = getRepeatingExtension(GsaExtension.class);
+    ContentIndex index = contentIndex;
+    if (!isIndexValid(index, extensions)) {
+      return buildContentIndex(extensions);
+    }
+    return index.extensions;
+  }
+
+  /**
+   * Builds the index of the extensions by content name and publishes it.
+   */
+  private Map<String, GsaExtension> buildContentIndex(
+      List<GsaExtension> extensions) {
+    // do not use com.google.gdata.util.commons.collect
+    // because this is to be distributed as client library
+    Map<String, GsaExtension> index =
+        new HashMap<String, GsaExtension>(extensions.size() * 4 / 3 + 1);
+    for (GsaExtension extension : extensions) {
+      extension.setOwner(this);
+      String name = extension.getContentName();
+      if (!index.containsKey(name)) {
+        index.put(name, extension);
+      }
+    }
+    contentIndex = new ContentIndex(index, extensions);
+    return index;
+  }
+
+  /**
+   * Name and content data of an extension.
+   */
+  private static class ContentEntry implements Map.Entry<String, String> {
+
+    private final String key;
+    private final String value;
+
+    ContentEntry(String key, String value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public String setValue(String value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      return (key == null ? e.getKey() == null : key.equals(e.getKey()))
+          && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      return (key == null ? 0 : key.hashCode())
+          ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  /**
+   * Read-only map of content names to content values, backed by the index.
+   */
+  private class ContentMap extends AbstractMap<String, String> {
+
+    @Override
+    public int size() {
+      return getContentIndex().size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return getContentIndex().containsKey(key);
+    }
+
+    @Override
+    public String get(Object key) {
+      return (key instanceof String) ? getGsaContent((String) key) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+      return new AbstractSet<Map.Entry<String, String>>() {
+        @Override
+        public int size() {
+          return getContentIndex().size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+          final Iterator<Map.Entry<String, GsaExtension>> i =
+              getContentIndex().entrySet().iterator();
+          return new Iterator<Map.Entry<String, String>>() {
+            public boolean hasNext() {
+              return i.hasNext();
+            }
+
+            public Map.Entry<String, String> next() {
+              Map.Entry<String, GsaExtension> e = i.next();
+              return new ContentEntry(
+                  e.getKey(), e.getValue().getContentValue());
+            }
+
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+      };
+    }
+  }
+
 }
 
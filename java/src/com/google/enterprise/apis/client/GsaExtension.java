@@ -16,6 +16,7 @@
 
 package com.google.enterprise.apis.client;
 
+import com.google.gdata.util.common.base.CharEscapers;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.data.Extension;
 import com.google.gdata.data.ExtensionDescription;
@@ -52,8 +53,34 @@ public class GsaExtension extends ExtensionPoint implements Extension {
   // Variable contentName holds the key (or the index), which is the value in the name= tag.
   // Content is stored directly in the XML Blob.
   private String contentName;
-  private String contentValue;
+
+  // Content value decoded from the blob, to skip decoding again.  Replaced
+  // as a whole so that threads reading a shared entry see a consistent pair.
+  private volatile DecodedContent decodedContent;
+
+  // Entry whose content index holds this extension, told about renames.
+  private volatile GsaEntry owner;
+
+  // Escape sequences produced by CharEscapers.xmlEscaper(), without the
+  // leading '&', and the characters they stand for.
+  private static final String[] ENTITIES =
+      { "amp;", "lt;", "gt;", "apos;", "quot;" };
+  private static final char[] ENTITY_CHARS = { '&', '<', '>', '\'', '"' };
   
+  /**
+   * Blob string and the content value decoded from it.
+   */
+  private static class DecodedContent {
+
+    final String blob;
+    final String value;
+
+    DecodedContent(String blob, String value) {
+      this.blob = blob;
+      this.value = value;
+    }
+  }
+
   static {
     EXTENSION_DESC.setExtensionClass(GsaExtension.class);
     EXTENSION_DESC.setNamespace(GsaNamespaces.GSA_NAMESPACE);
@@ -123,6 +150,16 @@ public class GsaExtension extends ExtensionPoint implements Extension {
    */
   public void setContentName(String contentName) {
     this.contentName = contentName;
+    if (owner != null) {
+      owner.contentNameChanged();
+    }
+  }
+
+  /**
+   * Sets the entry whose content index holds this extension.
+   */
+  void setOwner(GsaEntry owner) {
+    this.owner = owner;
   }
   
   /**
@@ -131,6 +168,12 @@ public class GsaExtension extends ExtensionPoint implements Extension {
    * @return extension content data
    */
   public String getContentValue() {
+    // Parsed text content is kept unescaped, see GsaExtensionHandler.
+    String text = xmlBlob.getText();
+    if (text != null) {
+      return text;
+    }
+
     String escaped = xmlBlob.getBlob();
     
     // Normalize all null content values to empty strings.
@@ -139,11 +182,14 @@ public class GsaExtension extends ExtensionPoint implements Extension {
     // If a null content extension is intended, then that extension should not
     // exist in the entry in the first place.
     if (escaped == null) {
-      contentValue = "";
-    } else {
-      contentValue = unescapeXml(escaped);
+      return "";
     }
-    return contentValue;
+    DecodedContent decoded = decodedContent;
+    if (decoded == null || decoded.blob != escaped) {
+      decoded = new DecodedContent(escaped, unescapeXml(escaped));
+      decodedContent = decoded;
+    }
+    return decoded.value;
   }
 
   /**
@@ -155,110 +201,61 @@ public class GsaExtension extends ExtensionPoint implements Extension {
     String escaped = escapeXml(contentValue);
     
     xmlBlob.setBlob(escaped);
-    this.contentValue = escaped;
+    decodedContent = (escaped == null)
+        ? null : new DecodedContent(escaped, contentValue);
   }
 
   /**
-   * Escapes XML-specific characters in a string.
+   * Escapes XML-specific characters in a string.  The string is returned
+   * as is if it contains no special characters.
    * 
    * @param inString input string, which may or may not contain XML special characters
    * @return String with all special characters escaped
    */
-  private String escapeXml(String inString) {
+  static String escapeXml(String inString) {
     if (inString == null) {
       return null;
     }
-    
-    StringBuilder builder = new StringBuilder();
-    char[] inputArray = inString.toCharArray();
-    
-    for (int i = 0; i < inputArray.length; i++) {
-      if (inputArray[i] == '&') {
-        builder.append("&amp;");
-      } else if (inputArray[i] == '<') {
-        builder.append("&lt;");
-      } else if (inputArray[i] == '>') {
-        builder.append("&gt;");
-      } else if (inputArray[i] == '\'') {
-        builder.append("&apos;");
-      } else if (inputArray[i] == '"') {
-        builder.append("&quot;");
-      } else {
-        builder.append(inputArray[i]);
-      }
-    }
-    return builder.toString();    
+    return CharEscapers.xmlEscaper().escape(inString);
   }
   
   /**
-   * Un-escapes XML escape sequences in a string.
+   * Un-escapes XML escape sequences in a string, in a single pass.  The
+   * string is returned as is if it contains no escape sequences.
    * 
    * @param xmlString input string, which may or may not contain XML escape sequences
    * @return String with all escape sequences un-escaped
    */
-  private String unescapeXml(String xmlString) {
+  static String unescapeXml(String xmlString) {
     int index = xmlString.indexOf('&');
     if (index < 0) {
       return xmlString;
     }
-    char[] inputArray = xmlString.toCharArray();
-    char[] outputArray = new char[inputArray.length];
-    System.arraycopy(inputArray, 0, outputArray, 0, index);
+    int length = xmlString.length();
+    StringBuilder builder = null;
     
-    // Note: escaped[pos] = end of the escaped char array.
-    int pos = index;
-    for (int i = index; i < inputArray.length;) {
-      if (inputArray[i] != '&') {
-        outputArray[pos++] = inputArray[i++];
-        continue;
-      }
-      int j = i + 1;
-      
-      // Scan until we find a char that is not valid for this sequence.
-      for (; j < inputArray.length; j++) {
-        char ch = inputArray[j];
-        if (!Character.isLetter(ch)) {
+    // Note: start = beginning of the characters not copied to the builder yet.
+    int start = 0;
+    for (; index >= 0; index = xmlString.indexOf('&', index + 1)) {
+      for (int e = 0; e < ENTITIES.length; e++) {
+        String entity = ENTITIES[e];
+        if (index + entity.length() < length
+            && xmlString.regionMatches(index + 1, entity, 0, entity.length())) {
+          if (builder == null) {
+            builder = new StringBuilder(length);
+          }
+          builder.append(xmlString, start, index).append(ENTITY_CHARS[e]);
+          start = index + entity.length() + 1;
           break;
         }
       }
-      
-      boolean replaced = false;
-      if (j < inputArray.length && inputArray[j] == ';') {
-        String original = new String(inputArray, i, j - i);
-        Character replaceWith;
-        if (original.equals("&amp")) {
-          replaceWith = '&';
-        } else if (original.equals("&lt")) {
-          replaceWith = '<';
-        } else if (original.equals("&gt")) {
-          replaceWith = '>';
-        } else if (original.equals("&apos")) {
-          replaceWith = '\'';
-        } else if (original.equals("&quot")) {
-          replaceWith = '"';
-        } else {
-          replaceWith = null;
-        }
-
-        if (replaceWith != null) {
-          outputArray[pos++] = replaceWith;
-          replaced = true;
-        }
-        // Skip over ';'
-        if (j < inputArray.length && inputArray[j] == ';') {
-          j++;
-        }
-      }
-      
-      if (!replaced) {
-        // Not a recognized escape sequence, leave as-is
-        System.arraycopy(inputArray, i, outputArray, pos, j - i);
-        pos += j - i;
-      }
-      i = j;
     }
-
-    return new String(outputArray, 0, pos); 
+    
+    if (builder == null) {
+      // Not a recognized escape sequence, leave as-is
+      return xmlString;
+    }
+    return builder.append(xmlString, start, length).toString();
   }
   
   /**
@@ -275,8 +272,9 @@ public class GsaExtension extends ExtensionPoint implements Extension {
     public GsaExtensionHandler(ExtensionProfile extProfile) {
       super(extProfile, GsaExtension.class);
       
-      // initialize so that the extension supports mixed value + xml content
-      initializeXmlBlob(getXmlBlob(), true, false);
+      // initialize so that the extension captures text content only once,
+      // falling back to mixed value + xml content for child elements
+      initializeTextBlob(getXmlBlob());
     }
 
     /**
@@ -17,6 +17,8 @@
 package com.google.enterprise.apis.client;
 
 import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.batch.BatchUtils;
 
 /**
  * The base feed class for the Google Search Appliance.
@@ -29,4 +31,14 @@ public class GsaFeed extends BaseFeed<GsaFeed, GsaEntry> {
     super(GsaEntry.class);
   }
 
+  /**
+   * Declares the GSA extensions and the {@code batch:} extensions used by
+   * {@link GsaBatch}.
+   */
+  @Override
+  public void declareExtensions(ExtensionProfile extProfile) {
+    super.declareExtensions(extProfile);
+    BatchUtils.declareExtensions(extProfile);
+  }
+
 }
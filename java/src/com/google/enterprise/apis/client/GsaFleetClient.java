@@ -0,0 +1,430 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.enterprise.apis.client;
+
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the same request against a fleet of appliances in parallel.
+ *
+ * Each call of {@link #execute} sends the request to every {@link GsaClient}
+ * of the fleet, with at most {@code maxConcurrentRequests} requests in flight
+ * on the {@link Executor} supplied at construction time, and waits for all of
+ * them.  The executor can be shared by several fleets and calls: only
+ * {@code maxConcurrentRequests} tasks are submitted per call, each running
+ * the requests of several appliances in turn, so monitoring hundreds of
+ * appliances doesn't take a thread per appliance.
+ *
+ * A request that doesn't complete within the timeout is abandoned, and
+ * reported as timed out, without holding up the results of the other
+ * appliances.  The timeout of a request starts when it starts running, not
+ * when it is queued.  The thread running an abandoned request is
+ * interrupted, but blocking network reads ignore interrupts, so the
+ * connect and read timeouts of the {@link GsaService services} should also
+ * be set to release threads stuck on unresponsive appliances.
+ *
+ *
+ */
+public class GsaFleetClient {
+
+  /**
+   * A request sent to each appliance.
+   *
+   * @param <T> type of the request result
+   */
+  public interface Request<T> {
+
+    /**
+     * Sends the request to an appliance.  This is called concurrently for
+     * different appliances.
+     *
+     * @param client the client connected to the appliance
+     * @return the result of the request
+     */
+    public T execute(GsaClient client) throws ServiceException, IOException;
+  }
+
+  /**
+   * The outcome of a request on an appliance.
+   *
+   * @param <T> type of the request result
+   */
+  public static class Result<T> {
+
+    private final GsaClient client;
+    private final T value;
+    private final Throwable failure;
+    private final long elapsedMillis;
+
+    Result(GsaClient client, T value, Throwable failure, long elapsedMillis) {
+      this.client = client;
+      this.value = value;
+      this.failure = failure;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public GsaClient getClient() {
+      return client;
+    }
+
+    /** Returns whether the request completed successfully. */
+    public boolean isSuccess() {
+      return failure == null;
+    }
+
+    /** Returns whether the request was abandoned after the timeout. */
+    public boolean isTimedOut() {
+      return failure instanceof TimeoutException;
+    }
+
+    /** Returns the result of the request, {@code null} if it failed. */
+    public T getValue() {
+      return value;
+    }
+
+    /**
+     * Returns the exception thrown by the request, a {@link TimeoutException}
+     * if it timed out, or {@code null} if it succeeded.
+     */
+    public Throwable getFailure() {
+      return failure;
+    }
+
+    /**
+     * Returns the time the request ran before it completed or was abandoned,
+     * in milliseconds.
+     */
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+      return client.getAddress() + ": "
+          + (failure == null ? String.valueOf(value) : failure.toString());
+    }
+  }
+
+  /** Default number of concurrent requests per call. */
+  public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+
+  /** Default timeout of a request on an appliance. */
+  public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+  /** Interval at which running requests are checked for timeouts. */
+  private static final long TIMEOUT_CHECK_INTERVAL_MILLIS = 100;
+
+  private final CopyOnWriteArrayList<GsaClient> clients =
+      new CopyOnWriteArrayList<GsaClient>();
+  private final Executor executor;
+  private final int maxConcurrentRequests;
+  private volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+  /**
+   * Creates a fleet client with the default number of concurrent requests.
+   *
+   * @param executor the executor running the requests
+   */
+  public GsaFleetClient(Executor executor) {
+    this(executor, DEFAULT_MAX_CONCURRENT_REQUESTS);
+  }
+
+  /**
+   * Creates a fleet client.
+   *
+   * @param executor the executor running the requests
+   * @param maxConcurrentRequests maximum number of requests in flight for
+   *        each call of {@link #execute}
+   */
+  public GsaFleetClient(Executor executor, int maxConcurrentRequests) {
+    if (executor == null) {
+      throw new NullPointerException("executor is required");
+    }
+    if (maxConcurrentRequests <= 0) {
+      throw new IllegalArgumentException(
+          "maxConcurrentRequests must be positive");
+    }
+    this.executor = executor;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+  }
+
+  /**
+   * Adds an appliance to the fleet, unless its client is already in the
+   * fleet, since results are keyed by client.  This can be called while
+   * requests run; they are sent to the appliances of the fleet when the call
+   * started.
+   *
+   * @param client the client connected to the appliance
+   * @return whether the client was added
+   */
+  public boolean addClient(GsaClient client) {
+    if (client == null) {
+      throw new NullPointerException("client is required");
+    }
+    return clients.addIfAbsent(client);
+  }
+
+  /**
+   * Adds appliances to the fleet, skipping the clients already in it.
+   *
+   * @param clients the clients connected to the appliances
+   */
+  public void addClients(Collection<GsaClient> clients) {
+    for (GsaClient client : clients) {
+      addClient(client);
+    }
+  }
+
+  /**
+   * Removes an appliance from the fleet.
+   *
+   * @param client the client connected to the appliance
+   * @return whether the appliance was in the fleet
+   */
+  public boolean removeClient(GsaClient client) {
+    return clients.remove(client);
+  }
+
+  /** Returns the clients of the fleet. */
+  public List<GsaClient> getClients() {
+    return new ArrayList<GsaClient>(clients);
+  }
+
+  /**
+   * Sets how long a request on an appliance may run before it is abandoned.
+   *
+   * @param timeoutMillis timeout in milliseconds
+   */
+  public void setTimeoutMillis(long timeoutMillis) {
+    if (timeoutMillis <= 0) {
+      throw new IllegalArgumentException("timeoutMillis must be positive");
+    }
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * Fetches a feed from every appliance.
+   *
+   * @param feedName name of the feed
+   * @return the result of each appliance, in the order of the fleet
+   * @throws InterruptedException if interrupted while waiting for the results
+   */
+  public Map<GsaClient, Result<GsaFeed>> getFeed(final String feedName)
+      throws InterruptedException {
+    return execute(new Request<GsaFeed>() {
+      public GsaFeed execute(GsaClient client)
+          throws ServiceException, IOException {
+        return client.getFeed(feedName);
+      }
+    });
+  }
+
+  /**
+   * Fetches an entry from every appliance.
+   *
+   * @param feedName name of the feed containing the entry
+   * @param entryId ID of the entry
+   * @return the result of each appliance, in the order of the fleet
+   * @throws InterruptedException if interrupted while waiting for the results
+   */
+  public Map<GsaClient, Result<GsaEntry>> getEntry(final String feedName,
+      final String entryId) throws InterruptedException {
+    return execute(new Request<GsaEntry>() {
+      public GsaEntry execute(GsaClient client)
+          throws ServiceException, IOException {
+        return client.getEntry(feedName, entryId);
+      }
+    });
+  }
+
+  /**
+   * Sends a request to every appliance and waits until each one completed,
+   * failed or timed out.
+   *
+   * @param request the request to send
+   * @return the result of each appliance, in the order of the fleet
+   * @throws InterruptedException if interrupted while waiting for the
+   *         results; the requests not started yet are dropped
+   */
+  public <T> Map<GsaClient, Result<T>> execute(Request<T> request)
+      throws InterruptedException {
+    List<Call<T>> calls = new ArrayList<Call<T>>();
+    for (GsaClient client : clients) {
+      calls.add(new Call<T>(client, request));
+    }
+    CountDownLatch done = new CountDownLatch(calls.size());
+    Queue<Call<T>> pending = new ConcurrentLinkedQueue<Call<T>>();
+    for (Call<T> call : calls) {
+      call.done = done;
+      pending.add(call);
+    }
+
+    int workers = Math.min(maxConcurrentRequests, calls.size());
+    for (int i = 0; i < workers; i++) {
+      startWorker(pending);
+    }
+
+    long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    try {
+      while (!done.await(TIMEOUT_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+        long now = System.nanoTime();
+        for (Call<T> call : calls) {
+          if (call.timeOut(now, timeoutNanos)) {
+            // The abandoned request may still hold its thread.
+            startWorker(pending);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      for (Call<T> call : calls) {
+        call.complete(null, e);
+      }
+      throw e;
+    }
+
+    Map<GsaClient, Result<T>> results =
+        new LinkedHashMap<GsaClient, Result<T>>();
+    for (Call<T> call : calls) {
+      results.put(call.client, call.result.get());
+    }
+    return results;
+  }
+
+  /** Starts a task running the pending calls until there are none left. */
+  private <T> void startWorker(final Queue<Call<T>> pending) {
+    Runnable worker = new Runnable() {
+      public void run() {
+        Call<T> call;
+        while ((call = pending.poll()) != null) {
+          call.run();
+        }
+      }
+    };
+    try {
+      executor.execute(worker);
+    } catch (RejectedExecutionException e) {
+      Call<T> call;
+      while ((call = pending.poll()) != null) {
+        call.complete(null, e);
+      }
+    }
+  }
+
+  /**
+   * A request on one appliance.
+   */
+  private static class Call<T> {
+
+    final GsaClient client;
+    final Request<T> request;
+    final AtomicReference<Result<T>> result =
+        new AtomicReference<Result<T>>();
+    CountDownLatch done;
+
+    /** Start of the request, 0 while queued. */
+    volatile long startNanos;
+
+    /** Thread running the request, guarded by this. */
+    private Thread thread;
+
+    Call(GsaClient client, Request<T> request) {
+      this.client = client;
+      this.request = request;
+    }
+
+    void run() {
+      if (result.get() != null) {
+        return;
+      }
+      synchronized (this) {
+        thread = Thread.currentThread();
+      }
+      startNanos = System.nanoTime();
+      try {
+        complete(request.execute(client), null);
+      } catch (Exception e) {
+        complete(null, e);
+      } finally {
+        synchronized (this) {
+          thread = null;
+        }
+        // Don't leak an interrupt from a timeout to the next request.
+        Thread.interrupted();
+      }
+    }
+
+    /**
+     * Abandons the request if it has run longer than the timeout.
+     *
+     * @return whether the request was abandoned
+     */
+    boolean timeOut(long now, long timeoutNanos) {
+      long start = startNanos;
+      if (start == 0 || now - start < timeoutNanos) {
+        return false;
+      }
+      if (!complete(null, new TimeoutException("No response from "
+          + client.getAddress() + " after "
+          + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms"))) {
+        return false;
+      }
+      synchronized (this) {
+        if (thread != null) {
+          thread.interrupt();
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Records the outcome of the request, unless already recorded.
+     *
+     * @return whether the outcome was recorded
+     */
+    boolean complete(T value, Throwable failure) {
+      long start = startNanos;
+      long elapsed = start == 0 ? 0
+          : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      if (!result.compareAndSet(null,
+          new Result<T>(client, value, failure, elapsed))) {
+        return false;
+      }
+      done.countDown();
+      return true;
+    }
+  }
+}
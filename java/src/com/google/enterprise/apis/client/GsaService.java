@@ -16,8 +16,12 @@
 
 package com.google.enterprise.apis.client;
 
+import com.google.gdata.client.AuthTokenFactory.AuthToken;
+import com.google.gdata.client.GoogleAuthTokenFactory.UserToken;
 import com.google.gdata.client.GoogleService;
 import com.google.gdata.client.Service;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.Feed;
 import com.google.gdata.util.Version;
 
 /**
@@ -26,6 +30,25 @@ import com.google.gdata.util.Version;
  */
 public class GsaService extends GoogleService {
   public static final String GSA_SERVICE = "GSA";
+
+  private volatile TokenCacheEntry tokenCacheEntry;
+
+  /**
+   * Cache of the tokens of this service, with the appliance and user they
+   * are stored under, so renewal threads see all three at once.
+   */
+  private static class TokenCacheEntry {
+
+    final GsaTokenCache cache;
+    final String host;
+    final String userId;
+
+    TokenCacheEntry(GsaTokenCache cache, String host, String userId) {
+      this.cache = cache;
+      this.host = host;
+      this.userId = userId;
+    }
+  }
   
   /** The Versions class contains all released versions for GsaService. */
   public static class Versions {
@@ -68,13 +91,84 @@ public class GsaService extends GoogleService {
   public GsaService(String applicationName, 
                     String protocol, String domainName) {
     super(GSA_SERVICE, applicationName, protocol, domainName);
-    declareExtensions();
+    declareExtensions(extProfile);
   }
-  
+
+  /**
+   * Constructs an instance connecting to the GSA service, which parses and
+   * generates feeds with the given extension profile instead of declaring
+   * its own.  Services connecting to many appliances can share
+   * {@link #getSharedExtensionProfile()}.
+   *
+   * @param applicationName the name of the client application accessing the
+   *                        service
+   * @param protocol        name of protocol to use for authentication
+   *                        ("http"/"https")
+   * @param domainName      the name of the domain hosting the login handler
+   * @param extProfile      the extension profile of the service, typically
+   *                        created by {@link #createExtensionProfile()}
+   */
+  public GsaService(String applicationName, String protocol,
+                    String domainName, ExtensionProfile extProfile) {
+    super(GSA_SERVICE, applicationName, protocol, domainName, extProfile);
+  }
+
+  /**
+   * Stores the tokens of this service in a cache when they change.
+   *
+   * @param tokenCache the cache of tokens, or {@code null} for none
+   * @param host address and port of the appliance
+   * @param userId the name of the user
+   */
+  void setTokenCache(GsaTokenCache tokenCache, String host, String userId) {
+    this.tokenCacheEntry = (tokenCache == null)
+        ? null : new TokenCacheEntry(tokenCache, host, userId);
+  }
+
+  @Override
+  public void tokenChanged(AuthToken newToken) {
+    super.tokenChanged(newToken);
+    TokenCacheEntry entry = tokenCacheEntry;
+    if (entry != null && newToken instanceof UserToken) {
+      entry.cache.putToken(entry.host, entry.userId,
+          ((UserToken) newToken).getValue());
+    }
+  }
+
+  /**
+   * Creates a new extension profile declaring the extensions of the GSA
+   * feeds, as used by a service created without profile.
+   *
+   * @return a new, modifiable extension profile
+   */
+  public static ExtensionProfile createExtensionProfile() {
+    ExtensionProfile extProfile = new ExtensionProfile();
+    new Feed().declareExtensions(extProfile);
+    declareExtensions(extProfile);
+    return extProfile;
+  }
+
+  /**
+   * Returns a frozen extension profile for the GSA feeds, built once and
+   * shared by all the services created with it.  It is read without locking,
+   * but can't be modified.
+   *
+   * @return the shared extension profile
+   * @see ExtensionProfile#freeze()
+   */
+  public static ExtensionProfile getSharedExtensionProfile() {
+    return SharedProfileHolder.PROFILE;
+  }
+
+  /** Lazily creates the shared extension profile. */
+  private static class SharedProfileHolder {
+    static final ExtensionProfile PROFILE = createExtensionProfile().freeze();
+  }
+
   /**
    * Declare the extensions of the feeds for the GSA service.
    */
-  private void declareExtensions() {
+  private static void declareExtensions(ExtensionProfile extProfile) {
     new GsaEntry().declareExtensions(extProfile);
     new GsaFeed().declareExtensions(extProfile);
   }
@@ -0,0 +1,81 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.enterprise.apis.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory cache of the authentication tokens of appliances, by host and
+ * user, so that clients created again for the same appliance and user, for
+ * instance when a monitoring service restarts its connections, reuse the
+ * session instead of logging in.
+ *
+ * Clients built by {@link GsaClient.Builder} with a cache start with the
+ * cached token, and store the tokens they get when they log in or renew
+ * their session.  A cached token whose session has expired is renewed with
+ * the credentials of the client on its first request.  The cache can be
+ * shared by threads.
+ *
+ *
+ */
+public class GsaTokenCache {
+
+  private final ConcurrentMap<String, String> tokens =
+      new ConcurrentHashMap<String, String>();
+
+  /**
+   * Returns the cached token of a user on an appliance.
+   *
+   * @param host address and port of the appliance
+   * @param userId the name of the user
+   * @return the token, or {@code null} if none is cached
+   */
+  public String getToken(String host, String userId) {
+    return tokens.get(key(host, userId));
+  }
+
+  /**
+   * Caches the token of a user on an appliance.
+   *
+   * @param host address and port of the appliance
+   * @param userId the name of the user
+   * @param token the token
+   */
+  public void putToken(String host, String userId, String token) {
+    tokens.put(key(host, userId), token);
+  }
+
+  /**
+   * Removes the token of a user on an appliance.
+   *
+   * @param host address and port of the appliance
+   * @param userId the name of the user
+   */
+  public void removeToken(String host, String userId) {
+    tokens.remove(key(host, userId));
+  }
+
+  /** Removes all the tokens. */
+  public void clear() {
+    tokens.clear();
+  }
+
+  private static String key(String host, String userId) {
+    return host + '\n' + userId;
+  }
+}
@@ -0,0 +1,565 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.enterprise.apis.client;
+
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lazy view of a GSA feed or entry that the appliance returns in pages.
+ *
+ * Each GSA feed paginates in its own way: policy ACLs are paged by
+ * {@code startLine}/{@code maxLines} over the feed entries, KeyMatch and
+ * synonym entries by {@code startLine}/{@code maxLines} over the lines of a
+ * single entry, crawl diagnostics by {@code pageNum}, and log entries report
+ * the {@code fromLine}/{@code toLine} range they hold.  This class knows
+ * these schemes (see {@link Paging}) and iterates over all pages as a single
+ * sequence of entries: feed entries for paged feeds, one entry per page for
+ * paged entries.
+ *
+ * Nothing is requested until iteration starts.  Pages are then fetched in
+ * the background, at most {@code readAhead} pages ahead of the caller, so
+ * the next page is usually available by the time the current one has been
+ * consumed.  Errors of the background requests are rethrown by the iterator
+ * as a {@link PagingException}.  An iterator that is abandoned before the
+ * end, for instance by a {@code break} or an exception in a for-each loop,
+ * must be {@link PageIterator#close() closed} to stop its prefetching, so
+ * early exits should iterate with an explicit {@link #iterator()} closed in
+ * a {@code finally} block.  Otherwise the prefetcher gives up after waiting
+ * {@link #setIdleTimeout idle timeout} milliseconds for the caller to take
+ * a page.  If the caller comes back later, the iterator resumes prefetching
+ * where it stopped.
+ *
+ *
+ */
+public class PagedGsaFeed implements Iterable<GsaEntry> {
+
+  /**
+   * Pagination schemes of the GSA feeds.
+   */
+  public enum Paging {
+
+    /**
+     * Feed entries requested with {@code startLine} and {@code maxLines},
+     * as in the policy ACLs feed.
+     */
+    FEED_LINES,
+
+    /**
+     * Lines of a single entry requested with {@code startLine} and
+     * {@code maxLines}, as in the KeyMatch and synonym feeds.
+     */
+    ENTRY_LINES,
+
+    /**
+     * Feed entries requested by {@code pageNum}, as in the crawl diagnostics
+     * feed.
+     */
+    FEED_PAGES,
+
+    /**
+     * Lines of a log entry requested with {@code startLine} and
+     * {@code maxLines}, and advanced by the {@code fromLine}/{@code toLine}
+     * range that the appliance returns.
+     */
+    LOG_LINES;
+
+    /**
+     * Returns the pagination scheme of a feed.
+     *
+     * @param feedName name of the feed
+     * @return pagination scheme, or {@code null} if the feed is not paged
+     */
+    public static Paging forFeed(String feedName) {
+      if (Terms.FEED_POLICY_ACLS.equals(feedName)) {
+        return FEED_LINES;
+      } else if (Terms.FEED_KEYMATCH.equals(feedName)
+          || Terms.FEED_SYNONYM.equals(feedName)) {
+        return ENTRY_LINES;
+      } else if (Terms.FEED_DIAGNOSTICS.equals(feedName)) {
+        return FEED_PAGES;
+      } else if (Terms.FEED_LOGS.equals(feedName)) {
+        return LOG_LINES;
+      }
+      return null;
+    }
+
+    /**
+     * Returns whether pages are single entries rather than feeds.
+     */
+    boolean isEntryPaged() {
+      return this == ENTRY_LINES || this == LOG_LINES;
+    }
+  }
+
+  /**
+   * Unchecked wrapper of the exception that failed a background page
+   * request, since {@link Iterator} methods cannot throw checked exceptions.
+   */
+  public static class PagingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PagingException(Throwable cause) {
+      super(cause);
+    }
+  }
+
+  /** Default number of lines per page for line-paged feeds and entries. */
+  public static final int DEFAULT_MAX_LINES = 500;
+
+  /** Default number of pages fetched ahead of the caller. */
+  public static final int DEFAULT_READ_AHEAD = 1;
+
+  /**
+   * Default number of milliseconds a prefetcher waits for the caller to take
+   * a page before it stops.
+   */
+  public static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+  /** Interval at which a blocked prefetcher checks whether it was closed. */
+  private static final long POLL_INTERVAL = 100L;
+
+  private final GsaClient client;
+  private final String feedName;
+  private final String entryId;
+  private final Map<String, String> queries;
+  private final Paging paging;
+
+  private volatile Executor executor;
+  private volatile int readAhead = DEFAULT_READ_AHEAD;
+  private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+  /**
+   * Constructs a paged view of a feed or of an entry.
+   *
+   * @param client client issuing the page requests
+   * @param feedName name of a paged feed, see {@link Paging#forFeed}
+   * @param entryId ID of the entry for entry-paged feeds, {@code null} for
+   *        feed-paged feeds
+   * @param queries additional query parameters, may include the initial
+   *        {@code startLine}, {@code maxLines} or {@code pageNum}
+   * @throws IllegalArgumentException if the feed is not paged, or if the
+   *         entry ID does not match the pagination scheme of the feed
+   */
+  public PagedGsaFeed(GsaClient client, String feedName, String entryId,
+                      Map<String, String> queries) {
+    this.paging = Paging.forFeed(feedName);
+    if (paging == null) {
+      throw new IllegalArgumentException("Feed is not paged: " + feedName);
+    }
+    if (paging.isEntryPaged() != (entryId != null)) {
+      throw new IllegalArgumentException(paging.isEntryPaged()
+          ? "Feed " + feedName + " is paged by entry, an entry ID is required"
+          : "Feed " + feedName + " is paged by feed, no entry ID is expected");
+    }
+    this.client = client;
+    this.feedName = feedName;
+    this.entryId = entryId;
+    this.queries = (queries != null)
+        ? new HashMap<String, String>(queries)
+        : new HashMap<String, String>();
+  }
+
+  /**
+   * Returns the pagination scheme used for the feed.
+   *
+   * @return pagination scheme
+   */
+  public Paging getPaging() {
+    return paging;
+  }
+
+  /**
+   * Sets the executor running the background page requests of new
+   * iterators.  Each iterator occupies one executor thread until it is
+   * exhausted or closed, or until its caller leaves a page untaken for the
+   * idle timeout.  By default, each iterator starts its own daemon thread.
+   *
+   * @param executor executor for page requests, {@code null} for the default
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Sets the number of pages that new iterators fetch ahead of the caller.
+   *
+   * @param readAhead number of pages buffered ahead, at least one
+   */
+  public void setReadAhead(int readAhead) {
+    if (readAhead <= 0) {
+      throw new IllegalArgumentException("readAhead must be positive");
+    }
+    this.readAhead = readAhead;
+  }
+
+  /**
+   * Sets how long the prefetcher of new iterators waits for the caller to
+   * take a page before it stops and releases its thread.  This bounds the
+   * life of the prefetcher of an iterator that is abandoned without being
+   * closed.  An iterator whose caller was only slow resumes prefetching on
+   * its next page.
+   *
+   * @param idleTimeout number of milliseconds, at least one
+   */
+  public void setIdleTimeout(long idleTimeout) {
+    if (idleTimeout <= 0) {
+      throw new IllegalArgumentException("idleTimeout must be positive");
+    }
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Starts a new pass over all pages.  The iterator must be closed if it is
+   * abandoned before the end.
+   */
+  public PageIterator iterator() {
+    return new PageIterator(newCursor(), readAhead, executor, idleTimeout);
+  }
+
+  private Cursor newCursor() {
+    switch (paging) {
+      case FEED_LINES:
+        return new FeedLinesCursor();
+      case ENTRY_LINES:
+        return new EntryLinesCursor();
+      case FEED_PAGES:
+        return new FeedPagesCursor();
+      case LOG_LINES:
+        return new LogLinesCursor();
+      default:
+        throw new AssertionError(paging);
+    }
+  }
+
+  private static int parseInt(String value, int defaultValue) {
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Fetches consecutive pages.  Cursors are used by a single thread.
+   */
+  private abstract class Cursor {
+
+    final Map<String, String> pageQueries =
+        new HashMap<String, String>(queries);
+
+    /**
+     * Fetches the next page.
+     *
+     * @return entries of the page, or {@code null} after the last page
+     */
+    abstract List<GsaEntry> next() throws ServiceException, IOException;
+  }
+
+  private class FeedLinesCursor extends Cursor {
+
+    private int startLine =
+        parseInt(queries.get(Terms.QUERY_START_LINE), 0);
+    private final int maxLines =
+        parseInt(queries.get(Terms.QUERY_MAX_LINES), DEFAULT_MAX_LINES);
+
+    @Override
+    List<GsaEntry> next() throws ServiceException, IOException {
+      pageQueries.put(Terms.QUERY_START_LINE, String.valueOf(startLine));
+      pageQueries.put(Terms.QUERY_MAX_LINES, String.valueOf(maxLines));
+      List<GsaEntry> entries =
+          client.queryFeed(feedName, pageQueries).getEntries();
+      if (entries.isEmpty()) {
+        return null;
+      }
+      // Advance by what was returned, in case the appliance caps maxLines.
+      startLine += entries.size();
+      return entries;
+    }
+  }
+
+  private class EntryLinesCursor extends Cursor {
+
+    private int startLine =
+        parseInt(queries.get(Terms.QUERY_START_LINE), 0);
+    private final int maxLines =
+        parseInt(queries.get(Terms.QUERY_MAX_LINES), DEFAULT_MAX_LINES);
+    private boolean first = true;
+
+    @Override
+    List<GsaEntry> next() throws ServiceException, IOException {
+      pageQueries.put(Terms.QUERY_START_LINE, String.valueOf(startLine));
+      pageQueries.put(Terms.QUERY_MAX_LINES, String.valueOf(maxLines));
+      GsaEntry entry = client.queryEntry(feedName, entryId, pageQueries);
+
+      // The lines of the page are the properties named by line number.
+      int lines = 0;
+      for (String name : entry.getGsaContentsView().keySet()) {
+        if (parseInt(name, -1) >= 0) {
+          lines++;
+        }
+      }
+      if (lines == 0 && !first) {
+        return null;
+      }
+      first = false;
+      startLine += lines;
+      return Collections.singletonList(entry);
+    }
+  }
+
+  private class FeedPagesCursor extends Cursor {
+
+    private int pageNum = parseInt(queries.get(Terms.QUERY_PAGE_NUM), 1);
+    private String previousFirstId;
+
+    @Override
+    List<GsaEntry> next() throws ServiceException, IOException {
+      pageQueries.put(Terms.QUERY_PAGE_NUM, String.valueOf(pageNum));
+      List<GsaEntry> entries =
+          client.queryFeed(feedName, pageQueries).getEntries();
+      if (entries.isEmpty()) {
+        return null;
+      }
+      // Some appliance versions keep returning the last page past the end.
+      String firstId = entries.get(0).getId();
+      if (firstId != null && firstId.equals(previousFirstId)) {
+        return null;
+      }
+      previousFirstId = firstId;
+      pageNum++;
+      return entries;
+    }
+  }
+
+  private class LogLinesCursor extends Cursor {
+
+    private int startLine =
+        parseInt(queries.get(Terms.QUERY_START_LINE), 0);
+    private final int maxLines =
+        parseInt(queries.get(Terms.QUERY_MAX_LINES), DEFAULT_MAX_LINES);
+    private boolean done = false;
+
+    @Override
+    List<GsaEntry> next() throws ServiceException, IOException {
+      if (done) {
+        return null;
+      }
+      pageQueries.put(Terms.QUERY_START_LINE, String.valueOf(startLine));
+      pageQueries.put(Terms.QUERY_MAX_LINES, String.valueOf(maxLines));
+      GsaEntry entry = client.queryEntry(feedName, entryId, pageQueries);
+
+      int fromLine = parseInt(entry.getGsaContent(Terms.PROPERTY_FROM_LINE), -1);
+      int toLine = parseInt(entry.getGsaContent(Terms.PROPERTY_TO_LINE), -1);
+      int totalLines =
+          parseInt(entry.getGsaContent(Terms.PROPERTY_TOTAL_LINES), -1);
+      if (fromLine < 0 || toLine < fromLine || toLine >= totalLines) {
+        done = true;
+      } else {
+        startLine += toLine - fromLine + 1;
+      }
+      return Collections.singletonList(entry);
+    }
+  }
+
+  /**
+   * Iterator over the entries of all pages, fed by a background prefetcher.
+   */
+  public static class PageIterator implements Iterator<GsaEntry> {
+
+    /** Queue marker for the end of the pages. */
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> pages;
+    private final Cursor cursor;
+    private final Executor executor;
+    private final long idleTimeout;
+    private volatile boolean closed = false;
+    private Iterator<GsaEntry> current =
+        Collections.<GsaEntry>emptyList().iterator();
+    private boolean exhausted = false;
+
+    /**
+     * Page that the prefetcher could not hand over before it stopped, to be
+     * handed over first when prefetching resumes.  Guarded by {@code this}.
+     */
+    private Object suspendedPage;
+
+    PageIterator(Cursor cursor, int readAhead, Executor executor,
+        long idleTimeout) {
+      this.pages = new ArrayBlockingQueue<Object>(readAhead);
+      this.cursor = cursor;
+      this.executor = executor;
+      this.idleTimeout = idleTimeout;
+      startPrefetcher(null);
+    }
+
+    /**
+     * Starts fetching the pages following the cursor position in the
+     * background.
+     *
+     * @param firstPage page to hand over before fetching, or {@code null}
+     */
+    private void startPrefetcher(final Object firstPage) {
+      Runnable prefetcher = new Runnable() {
+        public void run() {
+          if (firstPage != null && !offer(firstPage)) {
+            return;
+          }
+          try {
+            List<GsaEntry> page;
+            while (!closed && (page = cursor.next()) != null) {
+              if (!offer(page)) {
+                return;
+              }
+            }
+            offer(END);
+          } catch (ServiceException e) {
+            offer(new PagingException(e));
+          } catch (IOException e) {
+            offer(new PagingException(e));
+          } catch (RuntimeException e) {
+            offer(e);
+          }
+        }
+      };
+      if (executor != null) {
+        executor.execute(prefetcher);
+      } else {
+        Thread thread = new Thread(prefetcher, "PagedGsaFeed prefetcher");
+        thread.setDaemon(true);
+        thread.start();
+      }
+    }
+
+    /**
+     * Hands a page to the caller, waiting for room in the read-ahead buffer
+     * until the iterator gets closed or the idle timeout expires.  On
+     * timeout or interruption, the page is kept for the caller to resume
+     * prefetching, and the prefetcher must stop.
+     *
+     * @return {@code true} if the page was handed over, {@code false} if
+     *         the prefetcher must stop
+     */
+    private boolean offer(Object page) {
+      long deadline = System.currentTimeMillis() + idleTimeout;
+      try {
+        while (!closed) {
+          if (pages.offer(page, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            return true;
+          }
+          if (System.currentTimeMillis() >= deadline) {
+            break;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (this) {
+        if (closed) {
+          return false;
+        }
+        // The caller may have taken a page since the last attempt.
+        if (pages.offer(page)) {
+          return true;
+        }
+        suspendedPage = page;
+        return false;
+      }
+    }
+
+    /**
+     * Restarts the prefetcher if it stopped before the caller took all the
+     * pages it fetched.
+     */
+    private synchronized void resumePrefetcher() {
+      if (suspendedPage != null && !closed) {
+        Object page = suspendedPage;
+        suspendedPage = null;
+        startPrefetcher(page);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (exhausted) {
+          return false;
+        }
+        Object page = pages.poll();
+        try {
+          if (page == null) {
+            resumePrefetcher();
+            page = pages.take();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          close();
+          throw new PagingException(e);
+        }
+        if (page == END) {
+          exhausted = true;
+          return false;
+        } else if (page instanceof RuntimeException) {
+          close();
+          throw (RuntimeException) page;
+        }
+        current = ((List<GsaEntry>) page).iterator();
+      }
+      return true;
+    }
+
+    public GsaEntry next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops prefetching.  The iterator reports no more entries afterwards.
+     */
+    public void close() {
+      closed = true;
+      exhausted = true;
+      current = Collections.<GsaEntry>emptyList().iterator();
+      pages.clear();
+      synchronized (this) {
+        suspendedPage = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,476 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.enterprise.apis.client;
+
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.util.ServiceException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Synchronizes the policy ACL rules of an appliance with a set of rules.
+ *
+ * The current rules are streamed from the {@link Terms#FEED_POLICY_ACLS}
+ * feed and compared with the wanted rules by
+ * {@link Terms#PROPERTY_URL_PATTERN}; only the rules that differ are
+ * inserted, updated or deleted.  The changes are applied with a
+ * {@link GsaBatch}, so they are sent in batches with bounded concurrency, and
+ * the operations that fail with a transient error are retried.  The progress
+ * and throughput are reported to a {@link Listener}.
+ *
+ *
+ */
+public class PolicyAclSync {
+
+  /** Default number of rules fetched per page of the current rules. */
+  public static final int DEFAULT_PAGE_SIZE = PagedGsaFeed.DEFAULT_MAX_LINES;
+
+  /** Default number of retries of an operation failing transiently. */
+  public static final int DEFAULT_MAX_RETRIES = 3;
+
+  /** Default delay before the first retry, doubled at each retry. */
+  public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+
+  /**
+   * Receives the progress of a synchronization.  The methods may be called
+   * concurrently from the threads applying the changes.
+   */
+  public interface Listener {
+
+    /**
+     * Called each time a batch of operations completed.
+     *
+     * @param progress the progress of the synchronization
+     */
+    public void onProgress(Progress progress);
+
+    /**
+     * Called when an operation failed and won't be retried.
+     *
+     * @param result the result of the failed operation
+     */
+    public void onFailure(GsaBatch.Result result);
+  }
+
+  /**
+   * A snapshot of the progress of a synchronization.
+   */
+  public static class Progress {
+
+    private final int total;
+    private final int succeeded;
+    private final int failed;
+    private final int retried;
+    private final long elapsedMillis;
+
+    Progress(int total, int succeeded, int failed, int retried,
+             long elapsedMillis) {
+      this.total = total;
+      this.succeeded = succeeded;
+      this.failed = failed;
+      this.retried = retried;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    /** Returns the number of inserts, updates and deletes to apply. */
+    public int getTotal() {
+      return total;
+    }
+
+    /** Returns the number of operations that succeeded. */
+    public int getSucceeded() {
+      return succeeded;
+    }
+
+    /** Returns the number of operations that failed for good. */
+    public int getFailed() {
+      return failed;
+    }
+
+    /** Returns the number of attempts that failed and were retried. */
+    public int getRetried() {
+      return retried;
+    }
+
+    /** Returns the number of operations completed, successfully or not. */
+    public int getCompleted() {
+      return succeeded + failed;
+    }
+
+    /** Returns the time spent applying the operations, in milliseconds. */
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    /** Returns the number of operations completed per second. */
+    public double getRate() {
+      return elapsedMillis == 0 ? 0 : getCompleted() * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+      return getCompleted() + "/" + total + " rules applied, " + failed
+          + " failed, " + retried + " retried, "
+          + String.format("%.1f", getRate()) + " rules/s";
+    }
+  }
+
+  private final GsaClient client;
+  private int pageSize = DEFAULT_PAGE_SIZE;
+  private int batchSize = GsaBatch.DEFAULT_BATCH_SIZE;
+  private int maxConcurrentBatches = GsaBatch.DEFAULT_MAX_CONCURRENT_BATCHES;
+  private int maxRetries = DEFAULT_MAX_RETRIES;
+  private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+  private boolean deleteMissing = true;
+  private Executor executor;
+  private Listener listener;
+
+  /**
+   * Creates a synchronization of the policy ACL rules of an appliance.
+   *
+   * @param client the client connected to the appliance
+   */
+  public PolicyAclSync(GsaClient client) {
+    if (client == null) {
+      throw new NullPointerException("client is required");
+    }
+    this.client = client;
+  }
+
+  /**
+   * Sets the number of current rules fetched per page.
+   *
+   * @param pageSize number of rules per page, at least 1
+   */
+  public void setPageSize(int pageSize) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("pageSize must be positive");
+    }
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * Sets the number of operations per batch.
+   *
+   * @see GsaBatch#setBatchSize
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Sets the maximum number of batches in flight.
+   *
+   * @see GsaBatch#setMaxConcurrentBatches
+   */
+  public void setMaxConcurrentBatches(int maxConcurrentBatches) {
+    if (maxConcurrentBatches <= 0) {
+      throw new IllegalArgumentException(
+          "maxConcurrentBatches must be positive");
+    }
+    this.maxConcurrentBatches = maxConcurrentBatches;
+  }
+
+  /**
+   * Sets how many times an operation failing with a transient error, such as
+   * an I/O error or a 5xx status, is retried.
+   *
+   * @param maxRetries number of retries, 0 to disable them
+   */
+  public void setMaxRetries(int maxRetries) {
+    if (maxRetries < 0) {
+      throw new IllegalArgumentException("maxRetries must not be negative");
+    }
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * Sets the delay before the first retry.  The delay doubles at each retry.
+   *
+   * @param retryDelayMillis delay in milliseconds
+   */
+  public void setRetryDelayMillis(long retryDelayMillis) {
+    if (retryDelayMillis < 0) {
+      throw new IllegalArgumentException(
+          "retryDelayMillis must not be negative");
+    }
+    this.retryDelayMillis = retryDelayMillis;
+  }
+
+  /**
+   * Sets whether the current rules missing from the wanted rules are deleted.
+   * This is the default; otherwise, they are left in place.
+   *
+   * @param deleteMissing whether to delete the rules not wanted
+   */
+  public void setDeleteMissing(boolean deleteMissing) {
+    this.deleteMissing = deleteMissing;
+  }
+
+  /**
+   * Sets the executor running the batches.
+   *
+   * @see GsaBatch#setExecutor
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Sets the listener notified of the progress.
+   *
+   * @param listener listener of the progress, or {@code null}
+   */
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Reads rules, one per line.  Each line holds a URL pattern followed by a
+   * space and the ACL, for example
+   * {@code http://intranet/hr/ group:hr user:alice}.  Empty lines and lines
+   * without ACL are ignored; for a URL pattern listed twice, the last ACL
+   * wins.
+   *
+   * @param reader source of the rules
+   * @return the ACLs by URL pattern, in the order of the source
+   * @throws IOException if the rules can't be read
+   */
+  public static Map<String, String> readRules(Reader reader)
+      throws IOException {
+    BufferedReader bufferReader = new BufferedReader(reader);
+    Map<String, String> rules = new LinkedHashMap<String, String>();
+    String line;
+    while ((line = bufferReader.readLine()) != null) {
+      String[] result = line.trim().split(" ", 2);
+      if (result.length == 2) {
+        rules.remove(result[0]);
+        rules.put(result[0], result[1].trim());
+      }
+    }
+    return rules;
+  }
+
+  /**
+   * Synchronizes the rules of the appliance with the given rules.
+   *
+   * @param rules the wanted ACLs by URL pattern
+   * @return the final progress
+   * @throws ServiceException if the current rules can't be read
+   * @throws IOException if the current rules can't be read, or if interrupted
+   */
+  public Progress sync(Map<String, String> rules)
+      throws ServiceException, IOException {
+    return apply(diff(rules));
+  }
+
+  /**
+   * Computes the operations turning the current rules of the appliance into
+   * the given rules.  The current rules are streamed, so only their URL
+   * patterns are held in memory.  ACLs are compared ignoring differences in
+   * white space.
+   *
+   * @param rules the wanted ACLs by URL pattern
+   * @return the deletes, updates and inserts to apply, in this order
+   * @throws ServiceException if the current rules can't be read
+   * @throws IOException if the current rules can't be read
+   */
+  public List<GsaBatch.Operation> diff(Map<String, String> rules)
+      throws ServiceException, IOException {
+    Map<String, String> missing = new LinkedHashMap<String, String>(rules);
+    Set<String> seen = new HashSet<String>();
+    List<GsaBatch.Operation> deletes = new ArrayList<GsaBatch.Operation>();
+    List<GsaBatch.Operation> updates = new ArrayList<GsaBatch.Operation>();
+
+    Map<String, String> queries = new HashMap<String, String>();
+    queries.put(Terms.QUERY_MAX_LINES, String.valueOf(pageSize));
+    PagedGsaFeed.PageIterator pages =
+        client.pageFeed(Terms.FEED_POLICY_ACLS, queries).iterator();
+    try {
+      while (pages.hasNext()) {
+        GsaEntry entry = pages.next();
+        String urlPattern = entry.getGsaContent(Terms.PROPERTY_URL_PATTERN);
+        if (urlPattern == null || !seen.add(urlPattern)) {
+          continue;
+        }
+        String acl = missing.remove(urlPattern);
+        if (acl == null) {
+          if (deleteMissing) {
+            deletes.add(GsaBatch.Operation.delete(urlPattern));
+          }
+        } else if (!normalizeAcl(acl).equals(normalizeAcl(
+            entry.getGsaContent(Terms.PROPERTY_POLICY_ACL)))) {
+          updates.add(GsaBatch.Operation.update(urlPattern,
+              createRule(urlPattern, acl)));
+        }
+      }
+    } catch (PagedGsaFeed.PagingException e) {
+      if (e.getCause() instanceof ServiceException) {
+        throw (ServiceException) e.getCause();
+      }
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    } finally {
+      pages.close();
+    }
+
+    List<GsaBatch.Operation> operations = deletes;
+    operations.addAll(updates);
+    for (Map.Entry<String, String> rule : missing.entrySet()) {
+      operations.add(GsaBatch.Operation.insert(
+          createRule(rule.getKey(), rule.getValue())));
+    }
+    return operations;
+  }
+
+  /**
+   * Applies operations on the policy ACL rules, retrying the operations that
+   * fail with a transient error.  A failed batch may have been applied by
+   * the appliance with only its response lost, so a retried delete that
+   * finds no rule, or a retried insert that conflicts with an existing rule,
+   * counts as a success.
+   *
+   * @param operations the operations to apply, typically from {@link #diff}
+   * @return the final progress
+   * @throws InterruptedIOException if interrupted
+   */
+  public Progress apply(List<GsaBatch.Operation> operations)
+      throws InterruptedIOException {
+    final int total = operations.size();
+    final AtomicInteger succeeded = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+    final AtomicInteger retried = new AtomicInteger();
+    final long start = System.currentTimeMillis();
+
+    List<GsaBatch.Operation> pending = operations;
+    for (int attempt = 0; !pending.isEmpty(); attempt++) {
+      if (attempt > 0) {
+        sleep(retryDelayMillis << Math.min(attempt - 1, 30));
+      }
+      final boolean lastAttempt = attempt >= maxRetries;
+      final boolean retry = attempt > 0;
+      final List<GsaBatch.Operation> retries =
+          new ArrayList<GsaBatch.Operation>();
+
+      GsaBatch batch = new GsaBatch(client, Terms.FEED_POLICY_ACLS);
+      batch.setBatchSize(batchSize);
+      batch.setMaxConcurrentBatches(maxConcurrentBatches);
+      batch.setExecutor(executor);
+      batch.setListener(new GsaBatch.Listener() {
+        public void onResults(List<GsaBatch.Result> results) {
+          for (GsaBatch.Result result : results) {
+            if (isSuccess(result, retry)) {
+              succeeded.incrementAndGet();
+            } else if (!lastAttempt && isTransient(result)) {
+              retried.incrementAndGet();
+              synchronized (retries) {
+                retries.add(result.getOperation());
+              }
+            } else {
+              failed.incrementAndGet();
+              if (listener != null) {
+                listener.onFailure(result);
+              }
+            }
+          }
+          if (listener != null) {
+            listener.onProgress(new Progress(total, succeeded.get(),
+                failed.get(), retried.get(),
+                System.currentTimeMillis() - start));
+          }
+        }
+      });
+      batch.execute(pending);
+      pending = retries;
+    }
+
+    return new Progress(total, succeeded.get(), failed.get(), retried.get(),
+        System.currentTimeMillis() - start);
+  }
+
+  private static GsaEntry createRule(String urlPattern, String acl) {
+    GsaEntry entry = new GsaEntry();
+    entry.addGsaContent(Terms.PROPERTY_URL_PATTERN, urlPattern);
+    entry.addGsaContent(Terms.PROPERTY_POLICY_ACL, acl);
+    return entry;
+  }
+
+  /** Collapses runs of white space, so equivalent ACLs compare equal. */
+  private static String normalizeAcl(String acl) {
+    return acl == null ? "" : acl.trim().replaceAll("\\s+", " ");
+  }
+
+  /**
+   * Returns whether an operation succeeded.  Deleting a rule that is already
+   * gone, for example after a retry, is a success.  So is a retried insert
+   * conflicting with an existing rule, which the failed attempt created.
+   *
+   * @param result the result of the operation
+   * @param retry whether the operation failed transiently before
+   */
+  private static boolean isSuccess(GsaBatch.Result result, boolean retry) {
+    BatchOperationType type = result.getOperation().getType();
+    return result.isSuccess()
+        || (type == BatchOperationType.DELETE
+            && result.getCode() == HttpURLConnection.HTTP_NOT_FOUND)
+        || (retry && type == BatchOperationType.INSERT
+            && result.getCode() == HttpURLConnection.HTTP_CONFLICT);
+  }
+
+  /**
+   * Returns whether an operation failed with an error worth retrying: an
+   * I/O error, no response, or a server error.
+   */
+  private static boolean isTransient(GsaBatch.Result result) {
+    if (result.getException() != null) {
+      return !(result.getException() instanceof ServiceException)
+          || result.getCode() >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+    return result.getCode() == -1
+        || result.getCode() >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+  }
+
+  private static void sleep(long millis) throws InterruptedIOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException ie =
+          new InterruptedIOException("Interrupted while waiting to retry");
+      ie.initCause(e);
+      throw ie;
+    }
+  }
+}
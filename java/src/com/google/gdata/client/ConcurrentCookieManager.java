@@ -0,0 +1,291 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.gdata.client.http.GoogleGDataRequest.GoogleCookie;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cookie manager that can be shared by many threads issuing requests
+ * through the same service.  Cookies are indexed by domain and then by
+ * path, so looking up the cookies of a request only visits the domains that
+ * can match the request host, and only compares the request path with each
+ * distinct cookie path of those domains rather than with every cookie.
+ * Reads do not take any lock.  Expired cookies are evicted in expiration
+ * order, and when the store is full the cookie that expires first is
+ * dropped.
+ *
+ *
+ */
+public class ConcurrentCookieManager implements CookieManager {
+
+  /**
+   * Default maximum number of cookies kept by the manager.
+   */
+  public static final int DEFAULT_MAX_COOKIES = 1000;
+
+  /**
+   * A stored cookie together with its expiration time, in milliseconds.
+   */
+  private static class StoredCookie {
+
+    final GoogleCookie cookie;
+    final long expiry;
+
+    StoredCookie(GoogleCookie cookie) {
+      this.cookie = cookie;
+      Date expires = cookie.getExpires();
+      this.expiry = (expires != null) ? expires.getTime() : Long.MAX_VALUE;
+    }
+  }
+
+  private static final Comparator<StoredCookie> EXPIRY_ORDER =
+      new Comparator<StoredCookie>() {
+        public int compare(StoredCookie c1, StoredCookie c2) {
+          return (c1.expiry < c2.expiry) ? -1
+              : (c1.expiry == c2.expiry) ? 0 : 1;
+        }
+      };
+
+  /**
+   * Cookies by domain, then by path, then by cookie identity (name, domain
+   * and path).
+   */
+  private final ConcurrentMap<String,
+      ConcurrentMap<String, ConcurrentMap<GoogleCookie, StoredCookie>>>
+      domains = new ConcurrentHashMap<String,
+          ConcurrentMap<String, ConcurrentMap<GoogleCookie, StoredCookie>>>();
+
+  /**
+   * All stored cookies, soonest expiration first.  Guarded by {@code this}.
+   */
+  private final PriorityQueue<StoredCookie> expiryQueue =
+      new PriorityQueue<StoredCookie>(16, EXPIRY_ORDER);
+
+  /**
+   * Expiration time of the first cookie to expire, so readers can tell
+   * without locking whether eviction is needed.
+   */
+  private volatile long nextExpiry = Long.MAX_VALUE;
+
+  private volatile boolean cookiesEnabled = true;
+
+  private final int maxCookies;
+
+  /**
+   * Constructs a cookie manager holding at most {@link #DEFAULT_MAX_COOKIES}
+   * cookies.
+   */
+  public ConcurrentCookieManager() {
+    this(DEFAULT_MAX_COOKIES);
+  }
+
+  /**
+   * Constructs a cookie manager holding at most {@code maxCookies} cookies.
+   *
+   * @param maxCookies maximum number of stored cookies
+   */
+  public ConcurrentCookieManager(int maxCookies) {
+    if (maxCookies <= 0) {
+      throw new IllegalArgumentException("maxCookies must be positive");
+    }
+    this.maxCookies = maxCookies;
+  }
+
+  public void setCookiesEnabled(boolean cookiesEnabled) {
+    this.cookiesEnabled = cookiesEnabled;
+    if (!this.cookiesEnabled) {
+      clearCookies();
+    }
+  }
+
+  public boolean cookiesEnabled() {
+    return cookiesEnabled;
+  }
+
+  public synchronized void clearCookies() {
+    domains.clear();
+    expiryQueue.clear();
+    nextExpiry = Long.MAX_VALUE;
+  }
+
+  public synchronized void addCookie(GoogleCookie cookie) {
+    assert cookiesEnabled;
+
+    ConcurrentMap<String, ConcurrentMap<GoogleCookie, StoredCookie>>
+        domainPaths = domains.get(cookie.getDomain());
+    if (domainPaths == null) {
+      domainPaths = new ConcurrentHashMap<String,
+          ConcurrentMap<GoogleCookie, StoredCookie>>();
+      domains.put(cookie.getDomain(), domainPaths);
+    }
+    ConcurrentMap<GoogleCookie, StoredCookie> pathCookies =
+        domainPaths.get(cookie.getPath());
+    if (pathCookies == null) {
+      pathCookies = new ConcurrentHashMap<GoogleCookie, StoredCookie>();
+      domainPaths.put(cookie.getPath(), pathCookies);
+    }
+
+    // Replace any previous value of this cookie, since expiration and
+    // and cookie value are not part of the hashCode/equals algorithm
+    // for GoogleCookie.  The previous key is removed first because put()
+    // would keep it, and lookups return the cookie of the stored value.
+    StoredCookie stored = new StoredCookie(cookie);
+    StoredCookie previous = pathCookies.remove(cookie);
+    pathCookies.put(cookie, stored);
+    if (previous != null) {
+      expiryQueue.remove(previous);
+    }
+    expiryQueue.add(stored);
+
+    while (expiryQueue.size() > maxCookies) {
+      remove(expiryQueue.poll());
+    }
+    evictExpired(System.currentTimeMillis());
+  }
+
+  public Set<GoogleCookie> getCookies() {
+    evictIfNeeded();
+    Set<GoogleCookie> cookies = new HashSet<GoogleCookie>();
+    for (Map<String, ConcurrentMap<GoogleCookie, StoredCookie>> domainPaths
+        : domains.values()) {
+      for (Map<GoogleCookie, StoredCookie> pathCookies
+          : domainPaths.values()) {
+        for (StoredCookie stored : pathCookies.values()) {
+          cookies.add(stored.cookie);
+        }
+      }
+    }
+    return Collections.unmodifiableSet(cookies);
+  }
+
+  /**
+   * Returns the cookies that should be sent with a request to the URI.
+   * Only the domains that can match the URI host are visited, and only the
+   * cookies whose path is a prefix of the URI path are returned.
+   *
+   * @param uri target URI of the request
+   * @return list of matching cookies, possibly empty
+   */
+  public List<GoogleCookie> getCookies(URI uri) {
+    evictIfNeeded();
+    List<GoogleCookie> matches = new ArrayList<GoogleCookie>();
+    String host = uri.getHost();
+    if (host == null || domains.isEmpty()) {
+      return matches;
+    }
+    String path = uri.getPath();
+    if (path == null) {
+      path = "/";
+    }
+
+    // A cookie domain matches the host if it is the host itself or one of
+    // its trailing dot-separated segments, with or without the leading dot.
+    int start = 0;
+    while (true) {
+      addMatches(host.substring(start), path, matches);
+      int dot = host.indexOf('.', start);
+      if (dot < 0) {
+        break;
+      }
+      addMatches(host.substring(dot), path, matches);
+      start = dot + 1;
+    }
+    return matches;
+  }
+
+  /**
+   * Adds the cookies of a domain whose path is a prefix of the request path.
+   * Expired cookies have already been evicted.
+   */
+  private void addMatches(String domain, String path,
+      List<GoogleCookie> matches) {
+    Map<String, ConcurrentMap<GoogleCookie, StoredCookie>> domainPaths =
+        domains.get(domain);
+    if (domainPaths != null) {
+      for (Map.Entry<String, ConcurrentMap<GoogleCookie, StoredCookie>>
+          pathCookies : domainPaths.entrySet()) {
+        if (path.startsWith(pathCookies.getKey())) {
+          for (StoredCookie stored : pathCookies.getValue().values()) {
+            matches.add(stored.cookie);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Evicts expired cookies if the first expiration time has passed.
+   */
+  private void evictIfNeeded() {
+    long now = System.currentTimeMillis();
+    if (now > nextExpiry) {
+      synchronized (this) {
+        evictExpired(now);
+      }
+    }
+  }
+
+  /**
+   * Evicts all cookies that have expired.  Must be called with the lock held.
+   */
+  private void evictExpired(long now) {
+    StoredCookie first = expiryQueue.peek();
+    while (first != null && now > first.expiry) {
+      remove(expiryQueue.poll());
+      first = expiryQueue.peek();
+    }
+    nextExpiry = (first != null) ? first.expiry : Long.MAX_VALUE;
+  }
+
+  /**
+   * Removes a cookie from the domain and path index.  Must be called with
+   * the lock held.
+   */
+  private void remove(StoredCookie stored) {
+    String domain = stored.cookie.getDomain();
+    String path = stored.cookie.getPath();
+    ConcurrentMap<String, ConcurrentMap<GoogleCookie, StoredCookie>>
+        domainPaths = domains.get(domain);
+    if (domainPaths == null) {
+      return;
+    }
+    ConcurrentMap<GoogleCookie, StoredCookie> pathCookies =
+        domainPaths.get(path);
+    if (pathCookies != null) {
+      pathCookies.remove(stored.cookie, stored);
+      if (pathCookies.isEmpty()) {
+        domainPaths.remove(path);
+      }
+    }
+    if (domainPaths.isEmpty()) {
+      domains.remove(domain);
+    }
+  }
+}
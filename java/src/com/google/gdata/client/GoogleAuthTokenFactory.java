@@ -303,6 +303,19 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
     setUserToken(token);
   }
 
+  /**
+   * Sets the credentials of the user without authenticating.  A token is
+   * requested with them by {@link #handleSessionExpiredException}, when
+   * there is no session yet or when it has expired.
+   *
+   * @param username the name of the user (an email address)
+   * @param password the password of the user
+   */
+  public void setDeferredUserCredentials(String username, String password) {
+    this.username = username;
+    this.password = password;
+  }
+
   /**
    * Sets the AuthToken that should be used to authenticate requests to the
    * server. This is useful if the caller has some other way of accessing the
@@ -24,13 +24,16 @@ import com.google.gdata.client.authn.oauth.OAuthSigner;
 import com.google.gdata.client.batch.BatchInterruptedException;
 import com.google.gdata.client.http.GoogleGDataRequest;
 import com.google.gdata.client.http.GoogleGDataRequest.GoogleCookie;
+import com.google.gdata.client.http.RedirectCache;
 import com.google.gdata.data.BaseEntry;
 import com.google.gdata.data.BaseFeed;
 import com.google.gdata.data.DateTime;
+import com.google.gdata.data.ExtensionProfile;
 import com.google.gdata.util.AuthenticationException;
 import com.google.gdata.util.ContentType;
 import com.google.gdata.util.RedirectRequiredException;
 import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.UnsupportedMediaTypeException;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -38,6 +41,10 @@ import java.net.URL;
 import java.security.PrivateKey;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 /**
  * The GoogleService class extends the basic GData {@link Service}
@@ -47,6 +54,9 @@ import java.util.Set;
  */
 public class GoogleService extends Service implements TokenListener {
 
+  private static final Logger logger =
+      Logger.getLogger(GoogleService.class.getName());
+
 
   // Authentication token factory used to access Google services
   private AuthTokenFactory authTokenFactory;
@@ -56,6 +66,34 @@ public class GoogleService extends Service implements TokenListener {
   private CookieManager cookieManager;
 
 
+  // Application name used to build the User-Agent header.
+  private String applicationName;
+
+
+  // Targets of previously redirected requests.
+  private final RedirectCache redirectCache = new RedirectCache();
+
+
+  // Guards renewal.
+  private final Object renewalLock = new Object();
+
+
+  // Session renewal in progress, if any.
+  private SessionRenewal renewal;
+
+
+  // Time at which the current auth token was set, 0 if none.
+  private volatile long authTokenTime;
+
+
+  // Age at which sessions are renewed before use, 0 if never.
+  private volatile long sessionRefreshMillis;
+
+
+  // Whether the first request logs in with deferred user credentials.
+  private volatile boolean loginDeferred;
+
+
   /**
    * Authentication failed, invalid credentials presented to server.
    */
@@ -143,8 +181,66 @@ public class GoogleService extends Service implements TokenListener {
    * Authentication failed, the token's session has expired.
    */
   public static class SessionExpiredException extends AuthenticationException {
+
+    private final AuthToken authToken;
+
     public SessionExpiredException(String message) {
+      this(message, null);
+    }
+
+    /**
+     * Constructs an exception for a request that was sent with the given
+     * token, which lets the service tell whether the token has already been
+     * renewed since.
+     *
+     * @param message the error message
+     * @param authToken the token of the rejected request, or {@code null}
+     */
+    public SessionExpiredException(String message, AuthToken authToken) {
       super(message);
+      this.authToken = authToken;
+    }
+
+    /** Returns the token of the rejected request, or {@code null}. */
+    public AuthToken getAuthToken() {
+      return authToken;
+    }
+  }
+
+
+  /**
+   * A renewal of the session, whose outcome is shared by the threads that
+   * need it.
+   */
+  private static class SessionRenewal {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile ServiceException failure;
+
+    void complete(ServiceException failure) {
+      this.failure = failure;
+      done.countDown();
+    }
+
+    /**
+     * Waits for the renewal to complete.
+     *
+     * @return the exception that made the renewal fail, or {@code null}
+     */
+    ServiceException await() {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          done.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return failure;
     }
   }
 
@@ -154,7 +250,7 @@ public class GoogleService extends Service implements TokenListener {
    * {@code serviceName} for an application with the name
    * {@code applicationName}. The default domain (www.google.com) and the
    * default Google authentication methods will be used to authenticate.
-   * A simple cookie manager is used.
+   * A concurrent cookie manager is used.
    *
    * @param serviceName     the name of the Google service to which we are
    *                        connecting. Sample names of services might include
@@ -178,7 +274,7 @@ public class GoogleService extends Service implements TokenListener {
    * {@code serviceName} for an application with the name
    * {@code applicationName}.  The service will authenticate at the provided
    * {@code domainName}. The default Google authentication methods will be
-   * used to authenticate. A simple cookie manager is used.
+   * used to authenticate. A concurrent cookie manager is used.
    *
    * @param serviceName     the name of the Google service to which we are
    *                        connecting. Sample names of services might include
@@ -201,7 +297,36 @@ public class GoogleService extends Service implements TokenListener {
     authTokenFactory =
         new GoogleAuthTokenFactory(serviceName, applicationName,
                                    protocol, domainName, this);
-    cookieManager = new SimpleCookieManager();
+    cookieManager = new ConcurrentCookieManager();
+    initRequestFactory(applicationName);
+  }
+
+  /**
+   * Constructs a GoogleService instance like
+   * {@link #GoogleService(String, String, String, String)}, which parses and
+   * generates feeds with the given extension profile instead of declaring
+   * the default one.
+   *
+   * @param serviceName     the name of the Google service to which we are
+   *                        connecting
+   * @param applicationName the name of the client application accessing the
+   *                        service
+   * @param protocol        name of protocol to use for authentication
+   *                        ("http"/"https")
+   * @param domainName      the name of the domain hosting the login handler
+   * @param extProfile      the extension profile of the service
+   */
+  protected GoogleService(String serviceName,
+                          String applicationName,
+                          String protocol,
+                          String domainName,
+                          ExtensionProfile extProfile) {
+    super(extProfile);
+    requestFactory = new GoogleGDataRequest.Factory();
+    authTokenFactory =
+        new GoogleAuthTokenFactory(serviceName, applicationName,
+                                   protocol, domainName, this);
+    cookieManager = new ConcurrentCookieManager();
     initRequestFactory(applicationName);
   }
 
@@ -210,7 +335,7 @@ public class GoogleService extends Service implements TokenListener {
    * application with the name {@code applicationName}.  The provided
    * {@code GDataRequestFactory} will create requests, and the given
    * {@code AuthTokenFactory} will be used to generate auth tokens.
-   * A simple cookie manager is used.
+   * A concurrent cookie manager is used.
    *
    * @param applicationName the name of the client application accessing the
    *                        service. Application names should preferably have
@@ -225,7 +350,7 @@ public class GoogleService extends Service implements TokenListener {
                        AuthTokenFactory authTokenFactory) {
     this.requestFactory = requestFactory;
     this.authTokenFactory = authTokenFactory;
-    cookieManager = new SimpleCookieManager();
+    cookieManager = new ConcurrentCookieManager();
     initRequestFactory(applicationName);
   }
 
@@ -234,6 +359,7 @@ public class GoogleService extends Service implements TokenListener {
    * settings.
    */
   private void initRequestFactory(String applicationName) {
+    this.applicationName = applicationName;
     if (applicationName != null) {
       requestFactory.setHeader("User-Agent",
           applicationName + " " + getServiceVersion());
@@ -242,6 +368,27 @@ public class GoogleService extends Service implements TokenListener {
     }
   }
 
+  /**
+   * Sets the {@link GDataRequestFactory} used to create requests.  The
+   * User-Agent header and the current authentication token of the service
+   * are carried over to the new factory, so an alternate transport (such as
+   * {@link com.google.gdata.client.http.PooledGDataRequest.Factory}) can be
+   * installed after the service has been authenticated.
+   *
+   * @param requestFactory the request factory that generates gdata requests
+   */
+  @Override
+  public void setRequestFactory(GDataRequestFactory requestFactory) {
+    super.setRequestFactory(requestFactory);
+    initRequestFactory(applicationName);
+    if (authTokenFactory != null) {
+      AuthToken authToken = authTokenFactory.getAuthToken();
+      if (authToken != null) {
+        requestFactory.setAuthToken(authToken);
+      }
+    }
+  }
+
   /**
    * Returns the {@link AuthTokenFactory} currently associated with the service.
    */
@@ -278,7 +425,18 @@ public class GoogleService extends Service implements TokenListener {
   }
 
 
+  /**
+   * Returns the {@link RedirectCache} holding the targets of redirected
+   * requests.  Requests to a URL found in the cache are sent directly to the
+   * cached target.
+   */
+  public RedirectCache getRedirectCache() {
+    return redirectCache;
+  }
+
+
   public void tokenChanged(AuthToken newToken) {
+    authTokenTime = newToken == null ? 0 : System.currentTimeMillis();
     if (cookieManager != null) {
       // Flush any cookies that might contain session info for the
       // previous user.
@@ -326,6 +484,55 @@ public class GoogleService extends Service implements TokenListener {
     requestFactory.setAuthToken(authTokenFactory.getAuthToken());
   }
 
+  /**
+   * Sets the credentials of the user to authenticate requests to the server,
+   * without authenticating yet.  The service logs in when it creates its
+   * first request, or when {@link #authenticate()} is called; threads
+   * creating requests meanwhile wait for that single login.  A token set
+   * with {@link #setUserToken(String)} is used instead until its session
+   * expires, and then renewed with the credentials.
+   *
+   * @param username the name of the user (an email address)
+   * @param password the password of the user
+   */
+  public void setDeferredUserCredentials(String username, String password) {
+    getGoogleAuthTokenFactory().setDeferredUserCredentials(username, password);
+    loginDeferred = true;
+  }
+
+  /**
+   * Logs in with the credentials set by
+   * {@link #setDeferredUserCredentials(String, String)}, unless the service
+   * already has a token.  If another thread is logging in or renewing the
+   * session, this waits for it instead.
+   *
+   * @throws ServiceException if authentication failed
+   */
+  public void authenticate() throws ServiceException {
+    SessionRenewal current;
+    synchronized (renewalLock) {
+      if (authTokenFactory.getAuthToken() != null) {
+        loginDeferred = false;
+        return;
+      }
+      current = renewal;
+      if (current == null) {
+        renewal = new SessionRenewal();
+      }
+    }
+
+    if (current != null) {
+      ServiceException failure = current.await();
+      if (failure != null) {
+        throw failure;
+      }
+    } else {
+      renewSession(new SessionExpiredException("Not authenticated"));
+    }
+    // Later requests use the token without taking the renewal lock.
+    loginDeferred = false;
+  }
+
   /**
    * Sets the AuthToken that should be used to authenticate requests to the
    * server. This is useful if the caller has some other way of accessing the
@@ -484,6 +691,11 @@ public class GoogleService extends Service implements TokenListener {
                                     URL requestUrl,
                                     ContentType contentType)
       throws IOException, ServiceException {
+    if (loginDeferred) {
+      authenticate();
+    }
+    refreshSessionIfDue();
+    requestUrl = redirectCache.resolve(requestUrl);
     GDataRequest request = super.createRequest(type, requestUrl, contentType);
     if (request instanceof GoogleGDataRequest) {
       ((GoogleGDataRequest) request).setService(this);
@@ -494,6 +706,16 @@ public class GoogleService extends Service implements TokenListener {
   @Override
   protected GDataRequest createRequest(Query query, ContentType contentType)
       throws IOException, ServiceException {
+    if (loginDeferred) {
+      authenticate();
+    }
+    refreshSessionIfDue();
+    URL queryUrl = query.getUrl();
+    URL targetUrl = redirectCache.resolve(queryUrl);
+    if (targetUrl != queryUrl) {
+      return createRequest(GDataRequest.RequestType.QUERY, targetUrl,
+          contentType);
+    }
     GDataRequest request = super.createRequest(query, contentType);
     if (request instanceof GoogleGDataRequest) {
       ((GoogleGDataRequest) request).setService(this);
@@ -547,6 +769,8 @@ public class GoogleService extends Service implements TokenListener {
       entryUrl = handleRedirectException(e);
     } catch (SessionExpiredException e) {
       handleSessionExpiredException(e);
+    } catch (UnsupportedMediaTypeException e) {
+      handleUnsupportedMediaTypeException(e);
     }
 
     return super.update(entryUrl, entry);
@@ -563,12 +787,48 @@ public class GoogleService extends Service implements TokenListener {
       feedUrl = handleRedirectException(e);
     } catch (SessionExpiredException e) {
       handleSessionExpiredException(e);
+    } catch (UnsupportedMediaTypeException e) {
+      handleUnsupportedMediaTypeException(e);
     }
 
     return super.insert(feedUrl, entry);
   }
 
 
+  @Override
+  public <F extends BaseFeed<?, ?>> ValidatedResource<F> getValidatedFeed(
+      URL feedUrl, Class<F> feedClass, String etag, DateTime ifModifiedSince)
+      throws IOException, ServiceException {
+
+    try {
+      return super.getValidatedFeed(feedUrl, feedClass, etag, ifModifiedSince);
+    } catch (RedirectRequiredException e) {
+      feedUrl = handleRedirectException(e);
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+
+    return super.getValidatedFeed(feedUrl, feedClass, etag, ifModifiedSince);
+  }
+
+  @Override
+  public <E extends BaseEntry<?>> ValidatedResource<E> getValidatedEntry(
+      URL entryUrl, Class<E> entryClass, String etag, DateTime ifModifiedSince)
+      throws IOException, ServiceException {
+
+    try {
+      return super.getValidatedEntry(entryUrl, entryClass, etag,
+          ifModifiedSince);
+    } catch (RedirectRequiredException e) {
+      entryUrl = handleRedirectException(e);
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+
+    return super.getValidatedEntry(entryUrl, entryClass, etag,
+        ifModifiedSince);
+  }
+
   @Override
   public <F extends BaseFeed<?, ?>> F getFeed(URL feedUrl,
                                               Class<F> feedClass,
@@ -631,6 +891,40 @@ public class GoogleService extends Service implements TokenListener {
     return super.getFeed(query, feedClass, etag);
   }
 
+  @Override
+  public <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      Query query, Class<F> feedClass, BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+
+    // Redirects and session expiration are reported before any entry has
+    // been delivered, so retrying cannot duplicate entries.
+    try {
+      return super.streamFeed(query, feedClass, listener);
+    } catch (RedirectRequiredException e) {
+      query = new Query(handleRedirectException(e));
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+
+    return super.streamFeed(query, feedClass, listener);
+  }
+
+  @Override
+  public <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      URL feedUrl, Class<F> feedClass, BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+
+    try {
+      return super.streamFeed(feedUrl, feedClass, listener);
+    } catch (RedirectRequiredException e) {
+      feedUrl = handleRedirectException(e);
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+
+    return super.streamFeed(feedUrl, feedClass, listener);
+  }
+
   @Override
   public void delete(URL entryUrl) throws IOException, ServiceException {
 
@@ -683,7 +977,116 @@ public class GoogleService extends Service implements TokenListener {
    */
   protected void handleSessionExpiredException(SessionExpiredException e)
       throws ServiceException {
-    authTokenFactory.handleSessionExpiredException(e);
+    SessionRenewal current;
+    synchronized (renewalLock) {
+      current = renewal;
+      if (current == null) {
+        AuthToken expiredToken = e.getAuthToken();
+        if (expiredToken != null
+            && expiredToken != authTokenFactory.getAuthToken()) {
+          // The session was renewed after the request was sent.
+          return;
+        }
+        renewal = new SessionRenewal();
+      }
+    }
+
+    if (current != null) {
+      // Another thread is renewing the session; retry with its token.
+      if (current.await() != null) {
+        throw e;
+      }
+      return;
+    }
+    renewSession(e);
+  }
+
+
+  /**
+   * Turns request compression off when the server rejects the compressed
+   * data of a request, assuming it doesn't accept compressed data, so that
+   * the request is sent again uncompressed.  If the rejected data wasn't
+   * compressed, or compression is already off, the exception is rethrown.
+   */
+  protected void handleUnsupportedMediaTypeException(
+      UnsupportedMediaTypeException e) throws ServiceException {
+    if (!e.isRequestCompressed() || !isRequestCompressionEnabled()) {
+      throw e;
+    }
+    logger.info("Compressed request rejected, disabling request compression: "
+        + e.getMessage());
+    setRequestCompression(-1, Deflater.DEFAULT_COMPRESSION);
+  }
+
+
+  /**
+   * Renews the session, and shares the outcome with the threads waiting for
+   * it.  The caller must have installed the renewal.
+   */
+  private void renewSession(SessionExpiredException e)
+      throws ServiceException {
+    ServiceException failure = null;
+    try {
+      authTokenFactory.handleSessionExpiredException(e);
+    } catch (ServiceException ex) {
+      failure = ex;
+      throw ex;
+    } finally {
+      SessionRenewal done;
+      synchronized (renewalLock) {
+        done = renewal;
+        renewal = null;
+      }
+      done.complete(failure);
+    }
+  }
+
+
+  /**
+   * Sets the age at which the session is renewed before sending a request,
+   * instead of waiting for a request to fail with a
+   * {@link SessionExpiredException}.  The renewal is done by the thread
+   * creating the first request past that age, while other threads keep
+   * using the current token; if it fails, the current token is kept until
+   * it expires.  This is only effective when the auth token factory can
+   * renew sessions, such as a {@link GoogleAuthTokenFactory} with user
+   * credentials.
+   *
+   * @param sessionRefreshMillis session age in milliseconds, or 0 to renew
+   *        sessions only when they expire
+   */
+  public void setSessionRefreshInterval(long sessionRefreshMillis) {
+    if (sessionRefreshMillis < 0) {
+      throw new IllegalArgumentException(
+          "sessionRefreshMillis must not be negative");
+    }
+    this.sessionRefreshMillis = sessionRefreshMillis;
+  }
+
+
+  /**
+   * Renews the session if it is older than the refresh interval.
+   */
+  private void refreshSessionIfDue() {
+    long interval = sessionRefreshMillis;
+    long tokenTime = authTokenTime;
+    if (interval == 0 || tokenTime == 0
+        || System.currentTimeMillis() - tokenTime < interval) {
+      return;
+    }
+    synchronized (renewalLock) {
+      if (renewal != null || authTokenTime != tokenTime) {
+        return;
+      }
+      renewal = new SessionRenewal();
+    }
+    try {
+      renewSession(new SessionExpiredException("Session refresh"));
+    } catch (ServiceException e) {
+      logger.log(Level.WARNING, "Unable to refresh the session", e);
+      // Wait for another interval before trying again.
+      authTokenTime = System.currentTimeMillis();
+    }
   }
 
   /**
@@ -722,6 +1125,8 @@ public class GoogleService extends Service implements TokenListener {
         feedUrl = handleRedirectException(e);
       } catch (SessionExpiredException e) {
         handleSessionExpiredException(e);
+      } catch (UnsupportedMediaTypeException e) {
+        handleUnsupportedMediaTypeException(e);
       }
 
       return super.batch(feedUrl, inputFeed);
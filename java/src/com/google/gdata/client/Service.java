@@ -33,6 +33,7 @@ import com.google.gdata.data.introspection.ServiceDocument;
 import com.google.gdata.util.ContentType;
 import com.google.gdata.util.NotModifiedException;
 import com.google.gdata.util.ParseException;
+import com.google.gdata.util.ParseUtil;
 import com.google.gdata.util.PreconditionFailedException;
 import com.google.gdata.util.ResourceNotFoundException;
 import com.google.gdata.util.ServiceException;
@@ -44,6 +45,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.zip.Deflater;
 
 /**
  * The Service class represents a client connection to a GData service. It
@@ -378,6 +380,49 @@ public class Service {
         throws IOException, ServiceException;
   }
 
+
+  /**
+   * A feed or entry returned with the validators of its response, the entity
+   * tag and last modification date, so that a cached copy can later be
+   * revalidated with a conditional request.
+   *
+   * @param <T> type of the feed or entry
+   * @see Service#getValidatedFeed
+   * @see Service#getValidatedEntry
+   */
+  public static class ValidatedResource<T> {
+
+    private final T resource;
+    private final String etag;
+    private final DateTime lastModified;
+
+    public ValidatedResource(T resource, String etag, DateTime lastModified) {
+      this.resource = resource;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+
+    /** Returns the feed or entry. */
+    public T getResource() {
+      return resource;
+    }
+
+    /** Returns the entity tag of the response, or {@code null}. */
+    public String getEtag() {
+      return etag;
+    }
+
+    /** Returns the last modification date of the response, or {@code null}. */
+    public DateTime getLastModified() {
+      return lastModified;
+    }
+
+    /** Returns whether the response had any validator. */
+    public boolean hasValidators() {
+      return etag != null || lastModified != null;
+    }
+  }
+
   /**
    * Initializes the version information for a specific service type. Subclasses
    * of {@link Service} will generally call this method from within their static
@@ -425,12 +470,7 @@ public class Service {
    * extension data within feed or entry elements.
    */
   public Service() {
-
-    // Set the default User-Agent value for requests
-    requestFactory.setHeader("User-Agent", getServiceVersion());
-    
-    // Initialize the protocol version for this Service instance
-    protocolVersion = initProtocolVersion(getClass());
+    this(new ExtensionProfile());
 
     // The default extension profile is configured to accept arbitrary XML
     // at the feed or entry level. A client never wants to lose any
@@ -438,6 +478,23 @@ public class Service {
     // understood.
     new Feed().declareExtensions(extProfile);
   }
+
+  /**
+   * Constructs a new Service instance that parses and generates feeds with
+   * the given extension profile, without declaring the default one.
+   *
+   * @param extProfile the extension profile of the service
+   */
+  protected Service(ExtensionProfile extProfile) {
+
+    this.extProfile = extProfile;
+
+    // Set the default User-Agent value for requests
+    requestFactory.setHeader("User-Agent", getServiceVersion());
+    
+    // Initialize the protocol version for this Service instance
+    protocolVersion = initProtocolVersion(getClass());
+  }
   
   @SuppressWarnings("unchecked")
   private static Version initProtocolVersion(
@@ -514,7 +571,7 @@ public class Service {
     return SERVICE_VERSION;
   }
 
-  protected ExtensionProfile extProfile = new ExtensionProfile();
+  protected ExtensionProfile extProfile;
 
   /**
    * Returns the {@link ExtensionProfile} that defines any expected extensions
@@ -600,6 +657,7 @@ public class Service {
     GDataRequest request =
         requestFactory.getRequest(type, requestUrl, inputType);
     setTimeouts(request);
+    setStreamingMode(request);
     return request;
   }
 
@@ -629,6 +687,24 @@ public class Service {
   }
 
 
+  /**
+   * Sets the streaming mode of the request data for GDataRequest.
+   */
+  protected void setStreamingMode(GDataRequest request) {
+    if (!(request instanceof HttpGDataRequest)) {
+      return;
+    }
+    HttpGDataRequest httpRequest = (HttpGDataRequest) request;
+    if (chunkLength >= 0) {
+      httpRequest.setChunkedStreamingMode(chunkLength);
+    }
+    if (compressionThreshold >= 0) {
+      httpRequest.setRequestCompression(compressionThreshold,
+          compressionLevel);
+    }
+  }
+
+
   /**
    * Content type of data posted to the GData service. Defaults to Atom using
    * UTF-8 character set.
@@ -701,6 +777,81 @@ public class Service {
     readTimeout = timeout;
   }
 
+
+  /**
+   * Client-configured chunk length of streamed request data. A value of -1
+   * indicates request data is buffered to compute its length.
+   */
+  private int chunkLength = -1;
+
+
+  /**
+   * Sets the data of insert, update and batch requests to be sent to the
+   * remote GData service as it is generated, using chunked transfer
+   * encoding, instead of being buffered in memory to compute its length.
+   * The memory used by large uploads then no longer depends on their size.
+   * The service must accept chunked requests.
+   *
+   * @param chunkLength number of bytes in each chunk, 0 for the default
+   *        chunk length, or -1 to buffer request data.
+   *
+   * @see HttpGDataRequest#setChunkedStreamingMode(int)
+   */
+  public void setChunkedStreamingMode(int chunkLength) {
+    if (chunkLength < -1) {
+      throw new IllegalArgumentException("Invalid chunk length");
+    }
+    this.chunkLength = chunkLength;
+  }
+
+
+  /**
+   * Client-configured minimum length of compressed request data. A value of
+   * -1 indicates request data isn't compressed.
+   */
+  private volatile int compressionThreshold = -1;
+
+
+  /**
+   * Client-configured deflate level of compressed request data.
+   */
+  private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+
+  /**
+   * Sets the data of insert, update and batch requests to be compressed with
+   * gzip when it is at least {@code minLength} bytes long.  Large XML
+   * uploads typically shrink several times, which matters over slow links;
+   * small requests are sent as is.  The service must accept request data
+   * with a {@code Content-Encoding: gzip} header.
+   *
+   * @param minLength minimum number of bytes of request data to compress, or
+   *        -1 to send request data uncompressed.
+   * @param level deflate level, from 1 (fastest) to 9 (smallest), or -1 for
+   *        the default level.
+   *
+   * @see HttpGDataRequest#setRequestCompression(int, int)
+   */
+  public void setRequestCompression(int minLength, int level) {
+    if (minLength < -1) {
+      throw new IllegalArgumentException("Invalid minimum length");
+    }
+    if (level < Deflater.DEFAULT_COMPRESSION
+        || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level");
+    }
+    this.compressionLevel = level;
+    this.compressionThreshold = minLength;
+  }
+
+
+  /**
+   * Returns whether request data may be compressed.
+   */
+  public boolean isRequestCompressionEnabled() {
+    return compressionThreshold >= 0;
+  }
+
   /**
    * Parse an entry of the specified class from a parse source.
    */
@@ -971,7 +1122,168 @@ public class Service {
       closeSource(feedSource);
     }
   }
-  
+
+  /**
+   * Executes a GData query request against the target service and streams the
+   * entries of the resulting feed to a listener as they are parsed, instead
+   * of collecting them in the returned feed. Memory use therefore does not
+   * depend on the number of entries, and processing can start before the
+   * whole response has been received.
+   * 
+   * @param query Query instance defining target feed and query parameters.
+   * @param feedClass the class used to represent a service Feed.
+   * @param listener listener receiving each parsed entry.
+   * @return the feed, holding feed level data but no entries.
+   * @throws IOException error sending request or reading the feed.
+   * @throws com.google.gdata.util.ParseException error parsing the returned
+   *         feed data.
+   * @throws com.google.gdata.util.ResourceNotFoundException invalid feed URL.
+   * @throws ServiceException system error retrieving feed.
+   */
+  public <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      Query query, Class<F> feedClass, BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+    GDataRequest request = createFeedRequest(query);
+    return streamFeed(request, feedClass, listener);
+  }
+
+  /**
+   * Executes a GData feed request against the target service and streams the
+   * entries of the resulting feed to a listener as they are parsed.
+   * 
+   * @param feedUrl URL that defines target feed.
+   * @param feedClass the class used to represent a service Feed.
+   * @param listener listener receiving each parsed entry.
+   * @return the feed, holding feed level data but no entries.
+   * @throws IOException error sending request or reading the feed.
+   * @throws com.google.gdata.util.ParseException error parsing the returned
+   *         feed data.
+   * @throws com.google.gdata.util.ResourceNotFoundException invalid feed URL.
+   * @throws ServiceException system error retrieving feed.
+   * 
+   * @see #streamFeed(Query, Class, BaseFeed.EntryListener)
+   */
+  public <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      URL feedUrl, Class<F> feedClass, BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+    GDataRequest request = createFeedRequest(feedUrl);
+    return streamFeed(request, feedClass, listener);
+  }
+
+  private <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      GDataRequest request, Class<F> feedClass,
+      BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+
+    ParseSource feedSource = null;
+    try {
+      startVersionScope();
+      request.execute();
+      feedSource = request.getParseSource();
+      F feed = ParseUtil.createFeed(feedClass);
+      feed.setService(this);
+      feed.setEntryListener(listener);
+      ParseUtil.parseFeed(feedSource, feed, extProfile);
+      return feed;
+    } finally {
+      endVersionScope();
+      closeSource(feedSource);
+    }
+  }
+
+  /**
+   * Returns the feed at a URL along with the validators of the response, if
+   * it changed since the version described by the given validators.  Unlike
+   * {@link #getFeed(URL, Class, String)} and
+   * {@link #getFeed(URL, Class, DateTime)}, both conditions can be sent
+   * together, and the validators of the new version are returned for the
+   * next request.
+   * 
+   * @param feedUrl URL that defines target feed.
+   * @param feedClass the class used to represent a service Feed.
+   * @param etag entity tag of the known version, or {@code null}.
+   * @param ifModifiedSince last modification date of the known version, or
+   *        {@code null}.
+   * @return the feed and the validators of its response.
+   * @throws IOException error sending request or reading the feed.
+   * @throws NotModifiedException if the feed matches the known version.
+   * @throws ServiceException system error retrieving feed.
+   */
+  @SuppressWarnings("unchecked")
+  public <F extends BaseFeed<?, ?>> ValidatedResource<F> getValidatedFeed(
+      URL feedUrl, Class<F> feedClass, String etag, DateTime ifModifiedSince)
+      throws IOException, ServiceException {
+
+    GDataRequest request = createFeedRequest(feedUrl);
+    ParseSource feedSource = null;
+    try {
+      startVersionScope();
+      request.setEtag(etag);
+      request.setIfModifiedSince(ifModifiedSince);
+      request.execute();
+      feedSource = request.getParseSource();
+
+      BaseFeed<?, ?> feed =
+          BaseFeed.readFeed(feedSource, feedClass, extProfile);
+      feed.setService(this);
+      return new ValidatedResource<F>((F) feed,
+          getResponseEtag(request, feed.getEtag()),
+          request.getResponseDateHeader(GDataProtocol.Header.LAST_MODIFIED));
+    } finally {
+      endVersionScope();
+      closeSource(feedSource);
+    }
+  }
+
+  /**
+   * Returns the entry at a URL along with the validators of the response, if
+   * it changed since the version described by the given validators.
+   * 
+   * @param entryUrl resource URL for the entry.
+   * @param entryClass class used to represent service entries.
+   * @param etag entity tag of the known version, or {@code null}.
+   * @param ifModifiedSince last modification date of the known version, or
+   *        {@code null}.
+   * @return the entry and the validators of its response.
+   * @throws IOException error communicating with the GData service.
+   * @throws NotModifiedException if the entry matches the known version.
+   * @throws ServiceException if a system error occurred when retrieving the
+   *         entry.
+   * @see #getValidatedFeed
+   */
+  public <E extends BaseEntry<?>> ValidatedResource<E> getValidatedEntry(
+      URL entryUrl, Class<E> entryClass, String etag, DateTime ifModifiedSince)
+      throws IOException, ServiceException {
+
+    GDataRequest request = createEntryRequest(entryUrl);
+    ParseSource entrySource = null;
+    try {
+      startVersionScope();
+      request.setEtag(etag);
+      request.setIfModifiedSince(ifModifiedSince);
+      request.execute();
+      entrySource = request.getParseSource();
+
+      E entry = parseEntry(entryClass, entrySource);
+      return new ValidatedResource<E>(entry,
+          getResponseEtag(request, entry.getEtag()),
+          request.getResponseDateHeader(GDataProtocol.Header.LAST_MODIFIED));
+    } finally {
+      endVersionScope();
+      closeSource(entrySource);
+    }
+  }
+
+  /**
+   * Returns the entity tag of a response from its header, or else from the
+   * parsed resource.
+   */
+  private static String getResponseEtag(GDataRequest request,
+      String resourceEtag) {
+    String etag = request.getResponseHeader(GDataProtocol.Header.ETAG);
+    return etag != null ? etag : resourceEtag;
+  }
+
   /**
    * Executes a GData feed request against the target service and returns the
    * resulting feed results via an input stream.
@@ -29,20 +29,37 @@ import javax.crypto.spec.SecretKeySpec;
 /**
  * Signs strings using HMAC-SHA1.
  *
+ * A signer can be shared by threads.  Each thread keeps a {@link Mac}
+ * initialized with the key of the last consumer and token secrets it signed
+ * with, so that signing more requests with the same secrets doesn't look up
+ * the algorithm or set up the key again.
+ *
  * 
  */
 public class OAuthHmacSha1Signer implements OAuthSigner {
 
+  /**
+   * A MAC and the secrets of the key it is initialized with.
+   */
+  private static class KeyedMac {
+    final Mac mac;
+    String consumerSecret;
+    String tokenSecret;
+
+    KeyedMac(Mac mac) {
+      this.mac = mac;
+    }
+  }
+
+  private final ThreadLocal<KeyedMac> macs = new ThreadLocal<KeyedMac>();
+
   public String getSignature(String baseString, OAuthParameters oauthParameters)
       throws OAuthException {
     try {
       if (oauthParameters == null) {
         throw new OAuthException("OAuth parameters cannot be null");
       }
-      String keyString = getKey(oauthParameters);
-      SecretKey key = new SecretKeySpec(keyString.getBytes("UTF-8"), "HmacSHA1");
-      Mac mac = Mac.getInstance("HmacSHA1");
-      mac.init(key);
+      Mac mac = getMac(oauthParameters);
       return Base64.encode(mac.doFinal(baseString.getBytes("UTF-8")));
     } catch (UnsupportedEncodingException e) {
       throw new OAuthException(e);
@@ -53,6 +70,34 @@ public class OAuthHmacSha1Signer implements OAuthSigner {
     }
   }
 
+  /**
+   * Returns the MAC of the current thread, initialized with the key of the
+   * given secrets.
+   */
+  private Mac getMac(OAuthParameters oauthParameters)
+      throws UnsupportedEncodingException, NoSuchAlgorithmException,
+      InvalidKeyException {
+    KeyedMac keyedMac = macs.get();
+    if (keyedMac == null) {
+      keyedMac = new KeyedMac(Mac.getInstance("HmacSHA1"));
+      macs.set(keyedMac);
+    }
+    String consumerSecret = oauthParameters.getOAuthConsumerSecret();
+    String tokenSecret = oauthParameters.getOAuthTokenSecret();
+    if (!consumerSecret.equals(keyedMac.consumerSecret)
+        || !tokenSecret.equals(keyedMac.tokenSecret)) {
+      keyedMac.consumerSecret = null;
+      keyedMac.tokenSecret = null;
+      String keyString = getKey(oauthParameters);
+      SecretKey key =
+          new SecretKeySpec(keyString.getBytes("UTF-8"), "HmacSHA1");
+      keyedMac.mac.init(key);
+      keyedMac.consumerSecret = consumerSecret;
+      keyedMac.tokenSecret = tokenSecret;
+    }
+    return keyedMac.mac;
+  }
+
   private String getKey(OAuthParameters oauthParameters) {
     return (new StringBuilder())
         .append(OAuthUtil.encode(oauthParameters.getOAuthConsumerSecret()))
@@ -33,12 +33,19 @@ import java.security.spec.PKCS8EncodedKeySpec;
 /**
  * Signs strings using RSA-SHA1.
  *
+ * A signer can be shared by threads.  Each thread keeps a {@link Signature}
+ * initialized with the private key, so that signing more requests doesn't
+ * look up the algorithm or set up the key again.
+ *
  * 
  */
 public class OAuthRsaSha1Signer implements OAuthSigner {
 
   PrivateKey privateKey;
 
+  private final ThreadLocal<Signature> signatures =
+      new ThreadLocal<Signature>();
+
   /**
    * Sets the RSA-SHA1 private key object used to sign this request.
    *
@@ -69,8 +76,13 @@ public class OAuthRsaSha1Signer implements OAuthSigner {
   public String getSignature(String baseString, OAuthParameters oauthParameters)
       throws OAuthException {
     try {
-      Signature signer = Signature.getInstance("SHA1withRSA");
-      signer.initSign(privateKey);
+      Signature signer = signatures.get();
+      if (signer == null) {
+        signer = Signature.getInstance("SHA1withRSA");
+        signer.initSign(privateKey);
+        signatures.set(signer);
+      }
+      // Signing resets the signature to its initialized state.
       signer.update(baseString.getBytes("UTF-8"));
       return Base64.encode(signer.sign());
     } catch (NoSuchAlgorithmException e) {
@@ -78,6 +90,7 @@ public class OAuthRsaSha1Signer implements OAuthSigner {
     } catch (InvalidKeyException e) {
       throw new OAuthException("Error generating signature", e);
     } catch (SignatureException e) {
+      signatures.remove();
       throw new OAuthException("Error generating signature", e);
     } catch (UnsupportedEncodingException e) {
       throw new OAuthException("Error generating signature", e);
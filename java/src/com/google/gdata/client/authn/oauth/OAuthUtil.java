@@ -33,6 +33,8 @@ import java.util.TreeMap;
  */
 public class OAuthUtil {
 
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
   private OAuthUtil() {
   }
 
@@ -78,9 +80,29 @@ public class OAuthUtil {
   public static String getSignatureBaseString(String requestUrl, 
       String httpMethod, Map<String, String> baseParameters) 
       throws OAuthException {
-    return encode(httpMethod.toUpperCase()) + '&'
-        + encode(normalizeUrl(requestUrl)) + '&'
-        + encode(normalizeParameters(requestUrl, baseParameters));
+    StringBuilder baseString = new StringBuilder(256);
+    appendEncoded(baseString, httpMethod.toUpperCase(), false);
+    baseString.append('&');
+    appendEncoded(baseString, normalizeUrl(requestUrl), false);
+    baseString.append('&');
+
+    // The normalized parameters are encoded once as key/value pairs, and
+    // once more as part of the base string: both are done in a single pass.
+    boolean first = true;
+    for (Map.Entry<String, String> e
+        : sortParameters(requestUrl, baseParameters).entrySet()) {
+      if (e.getValue().length() == 0) {
+        continue;
+      }
+      if (!first) {
+        baseString.append("%26");
+      }
+      first = false;
+      appendEncoded(baseString, e.getKey(), true);
+      baseString.append("%3D");
+      appendEncoded(baseString, e.getValue(), true);
+    }
+    return baseString.toString();
   }
 
   /**
@@ -141,20 +163,10 @@ public class OAuthUtil {
   public static String normalizeParameters(
       String requestUrl, Map<String, String> requestParameters) {
 
-    // use a TreeMap to alphabetize the parameters by key
-    TreeMap<String, String> alphaParams = 
-        new TreeMap<String, String>(requestParameters);
-
-    // add the querystring to the base string (if one exists)
-    if (requestUrl.indexOf('?') > 0) {
-      Map<String, String> queryParameters = 
-          parseQuerystring(requestUrl.substring(requestUrl.indexOf('?')+1));
-      alphaParams.putAll(queryParameters);
-    }
-
     // piece together the base string, encoding each key and value
     StringBuilder paramString = new StringBuilder();
-    for (Map.Entry<String, String> e : alphaParams.entrySet()) {
+    for (Map.Entry<String, String> e
+        : sortParameters(requestUrl, requestParameters).entrySet()) {
       if (e.getValue().length() == 0) {
         continue;
       }
@@ -167,6 +179,30 @@ public class OAuthUtil {
     return paramString.toString();
   }
 
+  /**
+   * Merges the request parameters with the parameters of the querystring,
+   * sorted by key.
+   *
+   * @param requestUrl the request url (not <code>null</code>)
+   * @param requestParameters key/value pairs of parameters in the request
+   * @return the parameters, alphabetized by key
+   */
+  private static TreeMap<String, String> sortParameters(
+      String requestUrl, Map<String, String> requestParameters) {
+
+    // use a TreeMap to alphabetize the parameters by key
+    TreeMap<String, String> alphaParams = 
+        new TreeMap<String, String>(requestParameters);
+
+    // add the querystring to the base string (if one exists)
+    int queryStart = requestUrl.indexOf('?');
+    if (queryStart > 0) {
+      alphaParams.putAll(
+          parseQuerystring(requestUrl.substring(queryStart + 1)));
+    }
+    return alphaParams;
+  }
+
   /**
    * Parse a querystring into a map of key/value pairs.
    * 
@@ -206,7 +242,44 @@ public class OAuthUtil {
    * @return the url-encoded string
    */
   public static String encode(String stringToEncode) {
-    return CharEscapers.uriEscaper().escape(stringToEncode).replace("+", "%20")
-    .replace("*", "%2A").replace("%7E", "~");
+    StringBuilder encoded = new StringBuilder(stringToEncode.length() + 16);
+    appendEncoded(encoded, stringToEncode, false);
+    return encoded.toString();
+  }
+
+  /**
+   * Appends the input string, percent-encoded as per section 5.1 of the
+   * OAuth Spec: only letters, digits and "-._~" are left as is.
+   *
+   * @param out the builder to append to
+   * @param stringToEncode the string to encode
+   * @param twice whether to encode the string twice, as done for the
+   *        parameters in the signature base string
+   */
+  private static void appendEncoded(StringBuilder out, String stringToEncode,
+      boolean twice) {
+    int length = stringToEncode.length();
+    for (int i = 0; i < length; i++) {
+      char c = stringToEncode.charAt(i);
+      if (c >= 0x80) {
+        // Escape the run of non-ASCII characters as UTF-8 bytes, which keeps
+        // surrogate pairs together.
+        int end = i + 1;
+        while (end < length && stringToEncode.charAt(end) >= 0x80) {
+          end++;
+        }
+        String escaped = CharEscapers.uriEscaper().escape(
+            stringToEncode.substring(i, end));
+        out.append(twice ? escaped.replace("%", "%25") : escaped);
+        i = end - 1;
+      } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+          || (c >= '0' && c <= '9')
+          || c == '-' || c == '.' || c == '_' || c == '~') {
+        out.append(c);
+      } else {
+        out.append(twice ? "%25" : "%")
+            .append(HEX_DIGITS[c >>> 4]).append(HEX_DIGITS[c & 0xF]);
+      }
+    }
   }
 }
@@ -16,6 +16,8 @@
 
 package com.google.gdata.client.http;
 
+import com.google.gdata.client.ConcurrentCookieManager;
+import com.google.gdata.client.CookieManager;
 import com.google.gdata.client.GDataProtocol;
 import com.google.gdata.client.GoogleService;
 import com.google.gdata.client.Query;
@@ -28,18 +30,17 @@ import com.google.gdata.util.ServiceException;
 import com.google.gdata.util.Version;
 
 import java.io.IOException;
-import java.net.CookieHandler;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
@@ -56,12 +57,19 @@ public class GoogleGDataRequest extends HttpGDataRequest {
 
 
   /**
-   * If set, this System property will globally disable interception and
-   * handling of cookies for all GData services.
+   * If set, this System property will globally disable handling of cookies
+   * for all GData services.
    */
   public static final String DISABLE_COOKIE_HANDLER_PROPERTY =
     "com.google.gdata.DisableCookieHandler";
 
+  /**
+   * Value of {@link #DISABLE_COOKIE_HANDLER_PROPERTY}, read once at class
+   * load time.
+   */
+  private static final boolean cookiesDisabled =
+    Boolean.getBoolean(DISABLE_COOKIE_HANDLER_PROPERTY);
+
   /**
    * The GoogleGDataRequest.Factory class is a factory class for
    * constructing new GoogleGDataRequest instances.
@@ -307,129 +315,6 @@ public class GoogleGDataRequest extends HttpGDataRequest {
   }
 
 
-  /**
-   * Implements a scoped cookie handling mechanism for GData services.  This
-   * handler is a singleton class that is registered to globally listen and
-   * set cookies using {@link CookieHandler#setDefault(CookieHandler)}.  It
-   * will only process HTTP headers and responses associated with GData
-   * services, and will delegate the processing of any other cookie headers
-   * to the previously registered {@link CookieHandler} (if any).  When
-   * a Set-Cookie response header is found, it will save any associated
-   * cookie in the cookie cache associated with the {@link GoogleService}
-   * issuing the request.   Similarly, when a {@link GoogleService} issues
-   * a request, it will check its cookie cache and add any necessary
-   * Cookie header.
-   */
-  private static class GoogleCookieHandler extends CookieHandler {
-
-    private CookieHandler nextHandler;
-
-    // This is a singleton, only constructed once at class load time.
-    private GoogleCookieHandler() {
-
-      // Install the global GoogleCookieHandler instance, chaining to any
-      // existing CookieHandler
-      if (!Boolean.getBoolean(DISABLE_COOKIE_HANDLER_PROPERTY)) {
-        logger.fine("Installing GoogleCookieHandler");
-        nextHandler = CookieHandler.getDefault();
-        CookieHandler.setDefault(this);
-      }
-    }
-
-
-    @Override
-    public Map<String, List<String>> get(
-        URI uri, Map<String, List<String>> requestHeaders)
-        throws IOException {
-
-      Map<String, List<String>> cookieHeaders =
-        new HashMap<String, List<String>>();
-
-      // Only service requests initiated by GData services with cookie
-      // handling enabled.
-      GoogleService service = activeService.get();
-      if (service != null && service.handlesCookies()) {
-
-        // Get the list of matching cookies and accumulate a buffer
-        // containing the cookie name/value pairs.
-        Set<GoogleCookie> cookies = service.getCookies();
-        StringBuilder cookieBuf = new StringBuilder();
-        for (GoogleCookie cookie : cookies) {
-          if (cookie.matches(uri)) {
-            if (cookieBuf.length() > 0) {
-              cookieBuf.append("; ");
-            }
-            cookieBuf.append(cookie.getHeaderValue());
-            logger.fine("Setting cookie: " + cookie);
-          }
-        }
-
-        // If any matching cookies were found, update the request headers.
-        // Note: it's assumed here that nothing else is setting the Cookie
-        // header, which seems reasonable; otherwise we'd have to parse the
-        // existing value and add/merge managed cookies.
-        if (cookieBuf.length() != 0) {
-          cookieHeaders.put("Cookie",
-                             Collections.singletonList(cookieBuf.toString()));
-        }
-      } else {
-        if (nextHandler != null) {
-          return nextHandler.get(uri, requestHeaders);
-        }
-      }
-
-      return Collections.unmodifiableMap(cookieHeaders);
-    }
-
-
-    @Override
-    public void put(URI uri,
-                    Map<String, List<String>> responseHeaders)
-        throws IOException {
-
-      // Only service requests initiated by GData services with cookie
-      // handling enabled.
-      GoogleService service = activeService.get();
-      if (service != null && service.handlesCookies()) {
-        List<String> setCookieList = responseHeaders.get("Set-Cookie");
-        if (setCookieList != null && setCookieList.size() > 0) {
-          for (String cookieValue : setCookieList) {
-            GoogleCookie cookie = new GoogleCookie(uri, cookieValue);
-            service.addCookie(cookie);
-            logger.fine("Adding cookie:" + cookie);
-          }
-        }
-      } else {
-        if (nextHandler != null) {
-          nextHandler.get(uri, responseHeaders);
-        }
-      }
-    }
-  }
-
-
-  /**
-   * Holds the GoogleService that is executing requests for the current
-   * execution thread.
-   */
-  private static final ThreadLocal<GoogleService> activeService =
-    new ThreadLocal<GoogleService>();
-
-  /**
-   * The global CookieHandler instance for GData services.
-   */
-  @SuppressWarnings("unused") // instance init installs global hooks.
-  private static final GoogleCookieHandler googleCookieHandler;
-
-  static {
-    if (!Boolean.getBoolean(DISABLE_COOKIE_HANDLER_PROPERTY)) {
-      googleCookieHandler = new GoogleCookieHandler();
-    } else {
-      googleCookieHandler = null;
-    }
-  }
-
-
   /**
    * Constructs a new GoogleGDataRequest instance of the specified
    * RequestType, targeting the specified URL with the specified
@@ -453,6 +338,10 @@ public class GoogleGDataRequest extends HttpGDataRequest {
 
     super(type, requestUrl, contentType, authToken,
         headerMap, privateHeaderMap);
+
+    // Propagate redirects to our layer to add URL specific data to the
+    // request (like URL dependant authentication headers)
+    followRedirects = false;
   }
   
   
@@ -525,26 +414,114 @@ public class GoogleGDataRequest extends HttpGDataRequest {
   @Override
   public void execute() throws IOException, ServiceException {
 
-    // Set the current active service, so cookie handling will be enabled.
+    boolean handlesCookies = handlesCookies();
     try {
-      activeService.set(service);
-      // Propagate redirects to our layer to add URL specific data to the
-      // request (like URL dependant authentication headers)
-      httpConn.setInstanceFollowRedirects(false);
       super.execute();
-      
-      // Capture the version used to process the request
-      String versionHeader = 
-        httpConn.getHeaderField(GDataProtocol.Header.VERSION);
-      if (versionHeader != null) {
-        GoogleService service = activeService.get();
-        if (service != null) {
-          responseVersion = new Version(service.getClass(), versionHeader);
+    } catch (ServiceException e) {
+      // Error responses (including redirects) may also set cookies.
+      if (handlesCookies) {
+        captureCookies();
+      }
+      throw e;
+    }
+    if (handlesCookies) {
+      captureCookies();
+    }
+
+    // Capture the version used to process the request
+    String versionHeader =
+      httpConn.getHeaderField(GDataProtocol.Header.VERSION);
+    if (versionHeader != null && service != null) {
+      responseVersion = new Version(service.getClass(), versionHeader);
+    }
+  }
+
+
+  /**
+   * Returns {@code true} if the service manages the cookies of the request.
+   */
+  private boolean handlesCookies() {
+    return !cookiesDisabled && service != null && service.handlesCookies();
+  }
+
+
+  /**
+   * Returns the service cookies that match the URL.
+   */
+  @Override
+  protected String getCookieHeader(URL url) throws IOException {
+    if (!handlesCookies()) {
+      return null;
+    }
+    URI uri = toUri(url);
+    CookieManager cookieManager = service.getCookieManager();
+    Collection<GoogleCookie> cookies;
+    if (cookieManager instanceof ConcurrentCookieManager) {
+      cookies = ((ConcurrentCookieManager) cookieManager).getCookies(uri);
+    } else {
+      cookies = service.getCookies();
+    }
+
+    // Note: it's assumed here that nothing else is setting the Cookie
+    // header, which seems reasonable; otherwise we'd have to parse the
+    // existing value and add/merge managed cookies.
+    StringBuilder cookieBuf = null;
+    for (GoogleCookie cookie : cookies) {
+      if (cookie.matches(uri)) {
+        if (cookieBuf == null) {
+          cookieBuf = new StringBuilder();
+        } else {
+          cookieBuf.append("; ");
         }
-        
+        cookieBuf.append(cookie.getHeaderValue());
+        if (logger.isLoggable(Level.FINE)) {
+          logger.fine("Setting cookie: " + cookie);
+        }
+      }
+    }
+    return (cookieBuf != null) ? cookieBuf.toString() : null;
+  }
+
+
+  /**
+   * Saves the cookies set by the response in the service cookie manager.
+   */
+  private void captureCookies() throws IOException {
+    List<String> setCookieList = null;
+    for (Map.Entry<String, List<String>> header
+        : httpConn.getHeaderFields().entrySet()) {
+      if ("Set-Cookie".equalsIgnoreCase(header.getKey())) {
+        setCookieList = header.getValue();
+        break;
+      }
+    }
+    if (setCookieList == null || setCookieList.isEmpty()) {
+      return;
+    }
+    URI uri = toUri(httpConn.getURL());
+    for (String cookieValue : setCookieList) {
+      GoogleCookie cookie;
+      try {
+        cookie = new GoogleCookie(uri, cookieValue);
+      } catch (IllegalArgumentException e) {
+        logger.warning("Ignoring invalid cookie: " + e.getMessage());
+        continue;
+      }
+      service.addCookie(cookie);
+      if (logger.isLoggable(Level.FINE)) {
+        logger.fine("Adding cookie:" + cookie);
       }
-    } finally {
-      activeService.set(null);
+    }
+  }
+
+
+  private static URI toUri(URL url) throws IOException {
+    try {
+      return url.toURI();
+    } catch (URISyntaxException e) {
+      IOException ioe = new IOException("Invalid request URL: " + url);
+      ioe.initCause(e);
+      throw ioe;
     }
   }
 
@@ -554,19 +531,25 @@ public class GoogleGDataRequest extends HttpGDataRequest {
       throws IOException, ServiceException {
 
     try {
-      switch (httpConn.getResponseCode()) {
-        case HttpURLConnection.HTTP_MOVED_PERM:
-        case HttpURLConnection.HTTP_MOVED_TEMP:
-          throw new RedirectRequiredException(httpConn);
-      }
       super.handleErrorResponse();
+    } catch (RedirectRequiredException e) {
+      // Remember the target so later requests can skip the redirect.
+      if (service != null) {
+        service.getRedirectCache().put(requestUrl,
+            httpConn.getResponseCode(), e.getRedirectLocation());
+      }
+      throw e;
     } catch (AuthenticationException e) {
       // Throw a more specific exception for session expiration.
       String msg = e.getMessage();
       if (msg != null && msg.contains("Token expired")) {
         SessionExpiredException se =
-          new SessionExpiredException(e.getMessage());
-        se.setResponse(e.getResponseContentType(), e.getResponseBody());
+          new SessionExpiredException(e.getMessage(), getAuthToken());
+        // The body is discarded by connections streaming request data.
+        if (e.getResponseContentType() != null
+            && e.getResponseBody() != null) {
+          se.setResponse(e.getResponseContentType(), e.getResponseBody());
+        }
         throw se;
       }
       throw e;
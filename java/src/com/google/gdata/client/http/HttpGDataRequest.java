@@ -36,11 +36,16 @@ import com.google.gdata.util.NotAcceptableException;
 import com.google.gdata.util.NotImplementedException;
 import com.google.gdata.util.NotModifiedException;
 import com.google.gdata.util.PreconditionFailedException;
+import com.google.gdata.util.RedirectRequiredException;
 import com.google.gdata.util.ResourceNotFoundException;
 import com.google.gdata.util.ServiceException;
 import com.google.gdata.util.ServiceForbiddenException;
+import com.google.gdata.util.UnsupportedMediaTypeException;
 import com.google.gdata.util.VersionConflictException;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -49,12 +54,16 @@ import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.URL;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 
 /**
@@ -81,6 +90,28 @@ public class HttpGDataRequest implements GDataRequest {
       "com.google.gdata.UseMethodOverride";
 
 
+  /**
+   * Default maximum number of redirects followed by a single request.
+   */
+  public static final int DEFAULT_MAX_REDIRECTS = 5;
+
+  /**
+   * Size of the buffer of the writer returned by {@link #getRequestWriter()},
+   * so that small writes are encoded to UTF-8 in batches.
+   */
+  private static final int WRITER_BUFFER_SIZE = 8192;
+
+  /**
+   * HTTP status code for a temporary redirect that keeps the request method.
+   */
+  private static final int HTTP_TEMPORARY_REDIRECT = 307;
+
+  /**
+   * HTTP status code for a permanent redirect that keeps the request method.
+   */
+  private static final int HTTP_PERMANENT_REDIRECT = 308;
+
+
   /**
    * Name of HTTP header containing the method name that overrides the normal
    * HTTP method.
@@ -103,6 +134,7 @@ public class HttpGDataRequest implements GDataRequest {
     protected Map<String, String> privateHeaderMap
         = new LinkedHashMap<String, String>();
     protected boolean useSsl = false;
+    protected int maxRedirects = DEFAULT_MAX_REDIRECTS;
 
     public void setAuthToken(AuthTokenFactory.AuthToken authToken) {
       if (authToken != null && !(authToken instanceof HttpAuthToken)) {
@@ -119,6 +151,20 @@ public class HttpGDataRequest implements GDataRequest {
       this.useSsl = true;
     }
 
+    /**
+     * Sets the maximum number of redirects followed by each request created
+     * by this factory.
+     *
+     * @param maxRedirects maximum number of redirects, zero to disable
+     *        redirect following.
+     */
+    public void setMaxRedirects(int maxRedirects) {
+      if (maxRedirects < 0) {
+        throw new IllegalArgumentException("maxRedirects cannot be negative");
+      }
+      this.maxRedirects = maxRedirects;
+    }
+
     private void extendHeaderMap(Map<String, String> headerMap,
                                  String header, String value) {
       if (value == null) {
@@ -145,8 +191,10 @@ public class HttpGDataRequest implements GDataRequest {
         requestUrl = new URL(
             requestUrl.toString().replaceFirst("http", "https"));
       }
-      return new HttpGDataRequest(type, requestUrl, contentType,
-                                  authToken, headerMap, privateHeaderMap);
+      HttpGDataRequest request = new HttpGDataRequest(type, requestUrl,
+          contentType, authToken, headerMap, privateHeaderMap);
+      request.setMaxRedirects(maxRedirects);
+      return request;
     }
 
     @SuppressWarnings("unused")
@@ -192,6 +240,87 @@ public class HttpGDataRequest implements GDataRequest {
   protected boolean hasOutput;
 
 
+  /**
+   * True if redirect responses should be followed by {@link #execute()}.  If
+   * {@code false}, redirects are reported as
+   * {@link RedirectRequiredException}.
+   */
+  protected boolean followRedirects = true;
+
+
+  /**
+   * The maximum number of redirects followed by {@link #execute()}.
+   */
+  protected int maxRedirects = DEFAULT_MAX_REDIRECTS;
+
+
+  /**
+   * The token used to authenticate the request, if any.
+   */
+  private HttpAuthToken authToken;
+
+
+  /**
+   * All headers set on the request, so they can be sent again when following
+   * a redirect.
+   */
+  private final Map<String, String> requestHeaders =
+      new LinkedHashMap<String, String>();
+
+
+  /**
+   * Names of the headers set with {@link #setPrivateHeader}, which are only
+   * sent again to a redirect target on the same scheme, host and port.
+   */
+  private final Set<String> privateHeaders = new HashSet<String>();
+
+
+  /**
+   * Minimum number of bytes of request data compressed with gzip.  A value of
+   * -1 means request data isn't compressed.
+   */
+  private int compressionThreshold = -1;
+
+
+  /**
+   * Deflate level of compressed request data.
+   */
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+
+  /**
+   * True if the length of the request data is set in advance, which rules
+   * out compression.
+   */
+  private boolean fixedLength;
+
+
+  /**
+   * True if the request data is sent as it is written, so it isn't kept to
+   * be sent again.
+   */
+  private boolean streaming;
+
+
+  /**
+   * Copy of the request data sent on the connection, so it can be sent
+   * again to a redirect target, or {@code null} if it isn't kept.
+   */
+  private ByteArrayOutputStream sentData;
+
+
+  /**
+   * The stream compressing the request data, if any, finished on execution.
+   */
+  private CompressingOutputStream compressingStream;
+
+
+  /**
+   * True once the Cookie header has been computed for the request URL.
+   */
+  private boolean cookieHeaderSet;
+
+
   /**
    * The connection timeout for this request. A value of -1 means no value has
    * been configured (use JDK default timeout behavior).
@@ -266,6 +395,7 @@ public class HttpGDataRequest implements GDataRequest {
         throw new UnsupportedOperationException("Unknown request type:" + type);
     }
 
+    this.authToken = authToken;
     if (authToken != null) {
       // NOTE: Do not use setHeader() here, authorization should never be
       // logged.
@@ -315,8 +445,9 @@ public class HttpGDataRequest implements GDataRequest {
     // Should never cache GData requests/responses
     uc.setUseCaches(false);
 
-    // Always follow redirects
-    uc.setInstanceFollowRedirects(true);
+    // Redirects are followed by execute(), which keeps the request method
+    // without relying on the process-wide http.strictPostRedirect property.
+    uc.setInstanceFollowRedirects(false);
 
     return uc;
   }
@@ -335,6 +466,22 @@ public class HttpGDataRequest implements GDataRequest {
     readTimeout = timeout;
   }
 
+  /**
+   * Sets the maximum number of redirects followed when executing this
+   * request.  The request data, if any, is sent again to the redirect
+   * target, unless it was streamed.  Redirects that can't be followed are
+   * reported as a {@link RedirectRequiredException}.
+   *
+   * @param maxRedirects maximum number of redirects, zero to disable
+   *        redirect following.
+   */
+  public void setMaxRedirects(int maxRedirects) {
+    if (maxRedirects < 0) {
+      throw new IllegalArgumentException("maxRedirects cannot be negative");
+    }
+    this.maxRedirects = maxRedirects;
+  }
+
   public void setIfModifiedSince(DateTime conditionDate) {
     if (conditionDate == null) {
       return;
@@ -373,21 +520,212 @@ public class HttpGDataRequest implements GDataRequest {
     }
   }
 
+  /**
+   * Sends the request data in chunks as it is written, using chunked
+   * transfer encoding, instead of buffering all of it in memory to compute
+   * its length.  This must be called before the request stream is obtained,
+   * and has no effect on requests without request data.  Since the request
+   * data isn't kept, the server must accept chunked requests, and neither an
+   * authentication challenge nor a redirect keeping the request method can
+   * be answered by resending it.
+   *
+   * @param chunkLength number of bytes in each chunk, or 0 for the default
+   *        chunk length.
+   * @see HttpURLConnection#setChunkedStreamingMode(int)
+   */
+  public void setChunkedStreamingMode(int chunkLength) {
+    if (expectsInput) {
+      httpConn.setChunkedStreamingMode(chunkLength);
+      streaming = true;
+    }
+  }
+
+  /**
+   * Sends the request data as it is written, with a content length known in
+   * advance, instead of buffering all of it in memory to compute its length.
+   * Exactly {@code contentLength} bytes must then be written to the request
+   * stream.  This must be called before the request stream is obtained, and
+   * has no effect on requests without request data.  Since the request data
+   * isn't kept, a redirect keeping the request method can't be answered by
+   * resending it.
+   *
+   * @param contentLength number of bytes of request data.
+   * @see HttpURLConnection#setFixedLengthStreamingMode(int)
+   */
+  public void setFixedLengthStreamingMode(int contentLength) {
+    if (expectsInput) {
+      httpConn.setFixedLengthStreamingMode(contentLength);
+      fixedLength = true;
+      streaming = true;
+    }
+  }
+
+  /**
+   * Compresses the request data with gzip, and sends it with a
+   * {@code Content-Encoding: gzip} header, if it is at least
+   * {@code minLength} bytes long.  Smaller request data is sent as is, since
+   * the gzip header and trailer would outweigh the savings.  The data is
+   * compressed as it is written, without buffering more than
+   * {@code minLength} bytes.  This must be called before the request stream
+   * is obtained, and has no effect on requests without request data or with
+   * a fixed length.  A server that doesn't accept compressed data answers
+   * with an {@link UnsupportedMediaTypeException}.
+   *
+   * @param minLength minimum number of bytes of request data to compress, or
+   *        -1 to send request data uncompressed.
+   * @param level deflate level, from 1 (fastest) to 9 (smallest), or -1 for
+   *        the default level.
+   * @see java.util.zip.Deflater#setLevel(int)
+   */
+  public void setRequestCompression(int minLength, int level) {
+    if (minLength < -1) {
+      throw new IllegalArgumentException("Invalid minimum length");
+    }
+    if (level < Deflater.DEFAULT_COMPRESSION
+        || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level");
+    }
+    compressionThreshold = minLength;
+    compressionLevel = level;
+  }
+
   public OutputStream getRequestStream() throws IOException {
 
     if (!expectsInput) {
       throw new IllegalStateException("Request doesn't accept input");
     }
+    // Headers can't be set once the connection stream is opened.
+    setCookieHeader();
+    OutputStream requestStream;
+    if (compressionThreshold >= 0 && !fixedLength) {
+      compressingStream = new CompressingOutputStream();
+      requestStream = compressingStream;
+    } else {
+      requestStream = getConnectionStream();
+    }
     if (logger.isLoggable(Level.FINEST)){
-      return new LoggableOutputStream(logger, httpConn.getOutputStream());
+      return new LoggableOutputStream(logger, requestStream);
+    }
+    return requestStream;
+  }
+
+
+  /**
+   * Output stream holding back the request data until it reaches the
+   * compression threshold, and then compressing it to the connection.
+   * Headers can't be changed once the connection stream is opened, so the
+   * stream is only opened when the encoding of the data is known.
+   */
+  private class CompressingOutputStream extends OutputStream {
+
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private OutputStream out;
+    private boolean finished;
+    private boolean compressed;
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (finished) {
+        throw new IOException("Request data already sent");
+      }
+      if (out == null) {
+        if (pending.size() + len < compressionThreshold) {
+          pending.write(b, off, len);
+          return;
+        }
+        startCompression();
+      }
+      out.write(b, off, len);
+    }
+
+    private void startCompression() throws IOException {
+      setHeader("Content-Encoding", "gzip");
+      compressed = true;
+      out = new GZIPOutputStream(getConnectionStream(),
+          WRITER_BUFFER_SIZE) {
+        {
+          def.setLevel(compressionLevel);
+        }
+      };
+      pending.writeTo(out);
+      pending = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (out != null) {
+        out.flush();
+      }
+    }
+
+    /**
+     * Sends the request data held back, or completes the compressed data.
+     */
+    void finish() throws IOException {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      if (out == null) {
+        out = getConnectionStream();
+        pending.writeTo(out);
+        pending = null;
+      } else {
+        ((GZIPOutputStream) out).finish();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+      out.close();
     }
-    return httpConn.getOutputStream();
   }
 
 
+  /**
+   * Returns the output stream of the connection, keeping a copy of the data
+   * written to it if redirects may be followed and the data isn't streamed.
+   */
+  private OutputStream getConnectionStream() throws IOException {
+    OutputStream connectionStream = httpConn.getOutputStream();
+    if (streaming || !followRedirects || maxRedirects == 0) {
+      return connectionStream;
+    }
+    sentData = new ByteArrayOutputStream();
+    return new FilterOutputStream(connectionStream) {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        sentData.write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        sentData.write(b, off, len);
+      }
+    };
+  }
+
+
+  /**
+   * Returns {@code true} if the request data has been compressed, that is
+   * if it reached the compression threshold.
+   */
+  public boolean isRequestCompressed() {
+    return compressingStream != null && compressingStream.compressed;
+  }
+
   public XmlWriter getRequestWriter() throws IOException {
     OutputStream requestStream = getRequestStream();
-    Writer writer = new OutputStreamWriter(requestStream, "utf-8");
+    Writer writer = new BufferedWriter(
+        new OutputStreamWriter(requestStream, "utf-8"), WRITER_BUFFER_SIZE);
     return new XmlWriter(writer);
   }
 
@@ -400,17 +738,28 @@ public class HttpGDataRequest implements GDataRequest {
 
   public void setHeader(String name, String value) {
     httpConn.setRequestProperty(name, value);
+    requestHeaders.put(name, value);
+    privateHeaders.remove(name);
     logger.finer(name + ": " + value);
   }
 
 
   public void setPrivateHeader(String name, String value) {
     httpConn.setRequestProperty(name, value);
+    requestHeaders.put(name, value);
+    privateHeaders.add(name);
     logger.finer(name + ": <Not Logged>");
   }
 
   public void execute() throws IOException, ServiceException {
 
+    // Already done for requests whose data has been written.
+    setCookieHeader();
+
+    if (compressingStream != null) {
+      compressingStream.finish();
+    }
+
     if (connectTimeout >= 0) {
       httpConn.setConnectTimeout(connectTimeout);
     }
@@ -419,55 +768,210 @@ public class HttpGDataRequest implements GDataRequest {
       httpConn.setReadTimeout(readTimeout);
     }
 
-    // Set the http.strictPostRedirect property to prevent redirected
-    // POST/PUT/DELETE from being mapped to a GET. This
-    // system property was a hack to fix a jdk bug w/out changing back
-    // compat behavior. It's bogus that this is a system (and not a
-    // per-connection) property, so we just change it for the duration
-    // of the connection.
-    // See http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4023866
-    String httpStrictPostRedirect =
-        System.getProperty("http.strictPostRedirect");
-    try {
-      System.setProperty("http.strictPostRedirect", "true");
-      httpConn.connect();
-
-      if (logger.isLoggable(Level.FINE)) {
-
-        // Avoid calling URL.equals() unless an object equivalence test fails,
-        // because URL.equals() requires DNS resolution. This test will
-        // fail on the first check for any URLConnection implementation
-        // that derives from java.net.URLConnection. The 2nd check would
-        // work on an alternate impl that clones the URL.
-        if (httpConn.getURL() != requestUrl
-            && !httpConn.getURL().toExternalForm().equals(
-                requestUrl.toExternalForm())) {
-          logger.fine("Redirected to:" + httpConn.getURL().toExternalForm());
-        }
+    httpConn.connect();
+
+    // Follow redirects.  Streamed request data cannot be sent again, so
+    // redirects keeping the method of such requests are reported to the
+    // caller by checkResponse().
+    int redirects = 0;
+    boolean hasData = expectsInput;
+    while (followRedirects && redirects < maxRedirects
+        && isRedirect(httpConn.getResponseCode())) {
+      String location = httpConn.getHeaderField("Location");
+      if (location == null) {
+        break;
+      }
+      String method = httpConn.getRequestMethod();
+      if (isRedirectToGet(httpConn.getResponseCode(), method)) {
+        method = "GET";
+        hasData = false;
+      } else if (hasData && sentData == null) {
+        break;
+      }
+      redirects++;
+      redirect(new URL(httpConn.getURL(), location), method, hasData);
+    }
+
+    if (logger.isLoggable(Level.FINE)) {
+
+      // Avoid calling URL.equals() unless an object equivalence test fails,
+      // because URL.equals() requires DNS resolution. This test will
+      // fail on the first check for any URLConnection implementation
+      // that derives from java.net.URLConnection. The 2nd check would
+      // work on an alternate impl that clones the URL.
+      if (httpConn.getURL() != requestUrl
+          && !httpConn.getURL().toExternalForm().equals(
+              requestUrl.toExternalForm())) {
+        logger.fine("Redirected to:" + httpConn.getURL().toExternalForm());
+      }
 
-        // Log response information here, if enabled
-        logger.fine(httpConn.getResponseCode() + " "
-            + httpConn.getResponseMessage());
-        if (logger.isLoggable(Level.FINER)) {
-          for (Map.Entry<String, List<String>> headerField : httpConn
-              .getHeaderFields().entrySet()) {
-            for (String value : headerField.getValue()) {
-              logger.finer(headerField.getKey() + ": " + value);
-            }
+      // Log response information here, if enabled
+      logger.fine(httpConn.getResponseCode() + " "
+          + httpConn.getResponseMessage());
+      if (logger.isLoggable(Level.FINER)) {
+        for (Map.Entry<String, List<String>> headerField : httpConn
+            .getHeaderFields().entrySet()) {
+          for (String value : headerField.getValue()) {
+            logger.finer(headerField.getKey() + ": " + value);
           }
         }
       }
-      checkResponse(); // will flush any request data
+    }
+    checkResponse(); // will flush any request data
 
-    } finally {
-      if (httpStrictPostRedirect == null) {
-        System.clearProperty("http.strictPostRedirect");
-      } else {
-        System.setProperty("http.strictPostRedirect", httpStrictPostRedirect);
+    executed = true;
+  }
+
+
+  /**
+   * Returns the value of the Cookie header to send to a URL, or {@code null}
+   * to send none.  It is called once before the connection is opened, when
+   * the request stream is obtained or the request is executed, so the
+   * cookies set by earlier responses are included, and again for the target
+   * of each redirect followed.
+   *
+   * @param url the URL the request is sent to.
+   * @return the Cookie header value, or {@code null}.
+   * @throws IOException if the URL is invalid.
+   */
+  protected String getCookieHeader(URL url) throws IOException {
+    return null;
+  }
+
+
+  /**
+   * Adds the Cookie header for the request URL, if not already done.  The
+   * header value is not logged.
+   */
+  private void setCookieHeader() throws IOException {
+    if (cookieHeaderSet) {
+      return;
+    }
+    cookieHeaderSet = true;
+    String cookieHeader = getCookieHeader(requestUrl);
+    if (cookieHeader != null) {
+      setPrivateHeader("Cookie", cookieHeader);
+    }
+  }
+
+
+  /**
+   * Returns {@code true} if the status code is a redirect to another
+   * location.
+   */
+  private static boolean isRedirect(int responseCode) {
+    switch (responseCode) {
+      case HttpURLConnection.HTTP_MOVED_PERM:
+      case HttpURLConnection.HTTP_MOVED_TEMP:
+      case HttpURLConnection.HTTP_SEE_OTHER:
+      case HTTP_TEMPORARY_REDIRECT:
+      case HTTP_PERMANENT_REDIRECT:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+
+  /**
+   * Returns {@code true} if a redirect changes the request method to a GET
+   * without request data: always for 303 (See Other), and for POST requests
+   * redirected with 301 or 302, as browsers do.
+   */
+  private static boolean isRedirectToGet(int responseCode, String method) {
+    switch (responseCode) {
+      case HttpURLConnection.HTTP_SEE_OTHER:
+        return !"HEAD".equals(method);
+      case HttpURLConnection.HTTP_MOVED_PERM:
+      case HttpURLConnection.HTTP_MOVED_TEMP:
+        return "POST".equals(method);
+      default:
+        return false;
+    }
+  }
+
+
+  /**
+   * Replaces the current connection by a connection to the redirect target,
+   * sending the request headers and, if {@code sendData} is {@code true},
+   * the request data again.  The authorization and cookie headers are
+   * computed again for the new URL, and the other private headers are
+   * dropped if the target is on another scheme, host or port.  The headers
+   * describing the request data are dropped when it isn't sent.
+   */
+  private void redirect(URL target, String method, boolean sendData)
+      throws IOException {
+    InputStream redirectBody = httpConn.getErrorStream();
+    if (redirectBody == null) {
+      try {
+        redirectBody = httpConn.getInputStream();
+      } catch (IOException e) {
+        // no body
       }
     }
+    if (redirectBody != null) {
+      redirectBody.close();
+    }
 
-    executed = true;
+    boolean sameOrigin = isSameOrigin(httpConn.getURL(), target);
+    HttpURLConnection uc = getRequestConnection(target);
+    uc.setRequestMethod(method);
+    for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+      String name = header.getKey();
+      if ("Cookie".equalsIgnoreCase(name)
+          || (!sameOrigin && privateHeaders.contains(name))
+          || (!sendData && isDataHeader(name))) {
+        continue;
+      }
+      uc.setRequestProperty(name, header.getValue());
+    }
+    String cookieHeader = getCookieHeader(target);
+    if (cookieHeader != null) {
+      uc.setRequestProperty("Cookie", cookieHeader);
+    }
+    if (authToken != null) {
+      uc.setRequestProperty("Authorization",
+          authToken.getAuthorizationHeader(target, method));
+    }
+    if (connectTimeout >= 0) {
+      uc.setConnectTimeout(connectTimeout);
+    }
+    if (readTimeout >= 0) {
+      uc.setReadTimeout(readTimeout);
+    }
+    httpConn = uc;
+    if (sendData) {
+      httpConn.setDoOutput(true);
+      httpConn.setFixedLengthStreamingMode(sentData.size());
+      OutputStream out = httpConn.getOutputStream();
+      sentData.writeTo(out);
+      out.close();
+    }
+    httpConn.connect();
+  }
+
+
+  /**
+   * Returns {@code true} if the header describes the request data.
+   */
+  private static boolean isDataHeader(String name) {
+    return "Content-Type".equalsIgnoreCase(name)
+        || "Content-Encoding".equalsIgnoreCase(name)
+        || "Content-Length".equalsIgnoreCase(name)
+        || Header.METHOD_OVERRIDE.equalsIgnoreCase(name);
+  }
+
+
+  /**
+   * Returns {@code true} if both URLs have the same scheme, host and port.
+   */
+  private static boolean isSameOrigin(URL url, URL target) {
+    int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+    int targetPort = (target.getPort() != -1)
+        ? target.getPort() : target.getDefaultPort();
+    return url.getProtocol().equalsIgnoreCase(target.getProtocol())
+        && url.getHost().equalsIgnoreCase(target.getHost())
+        && port == targetPort;
   }
 
 
@@ -496,6 +1000,13 @@ public class HttpGDataRequest implements GDataRequest {
 
     switch (httpConn.getResponseCode()) {
 
+      case HttpURLConnection.HTTP_MOVED_PERM:
+      case HttpURLConnection.HTTP_MOVED_TEMP:
+      case HttpURLConnection.HTTP_SEE_OTHER:
+      case HTTP_TEMPORARY_REDIRECT:
+      case HTTP_PERMANENT_REDIRECT:
+        throw new RedirectRequiredException(httpConn);
+
       case HttpURLConnection.HTTP_NOT_FOUND:
         throw new ResourceNotFoundException(httpConn);
 
@@ -526,6 +1037,12 @@ public class HttpGDataRequest implements GDataRequest {
       case HttpURLConnection.HTTP_NOT_ACCEPTABLE:
         throw new NotAcceptableException(httpConn);
 
+      case HttpURLConnection.HTTP_UNSUPPORTED_TYPE:
+        UnsupportedMediaTypeException umte =
+            new UnsupportedMediaTypeException(httpConn);
+        umte.setRequestCompressed(isRequestCompressed());
+        throw umte;
+
       case HttpURLConnection.HTTP_GONE:
         throw new NoLongerAvailableException(httpConn);
 
@@ -581,6 +1098,13 @@ public class HttpGDataRequest implements GDataRequest {
     return new ParseSource(getResponseStream());
   }
 
+  /**
+   * Returns the token used to authenticate the request, or {@code null}.
+   */
+  public HttpAuthToken getAuthToken() {
+    return authToken;
+  }
+
   /**
    * Returns the URLConnection instance that represents the underlying
    * connection to the GData service that will be used by this request.
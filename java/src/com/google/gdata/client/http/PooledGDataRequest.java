@@ -0,0 +1,489 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import com.google.gdata.client.Query;
+import com.google.gdata.client.Service.GDataRequest;
+import com.google.gdata.util.ContentType;
+import com.google.gdata.util.ServiceException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * The PooledGDataRequest class is a {@link GoogleGDataRequest} that draws its
+ * connection from a bounded, per-host connection pool owned by its
+ * {@link Factory}.  The pool limits the number of concurrent connections
+ * to each host, makes sure that completed responses are fully consumed so
+ * the underlying keep-alive socket can be reused by the next request to the
+ * same host, and closes sockets that have been idle for too long.
+ * <p>
+ * The socket level caching itself is performed by the JDK keep-alive cache
+ * that backs {@link HttpURLConnection}, so the number of idle sockets that are
+ * actually retained per host is also bounded by the {@code http.maxConnections}
+ * system property (5 by default).
+ * <p>
+ * A connection is leased when the request stream is first obtained or the
+ * request is executed, and returned to the pool when the response stream is
+ * closed (or at the end of {@link #execute()} if the request has no response
+ * data).  Callers of {@link #getResponseStream()} must therefore always close
+ * the returned stream, as all {@link com.google.gdata.client.Service} methods
+ * already do.
+ *
+ *
+ */
+public class PooledGDataRequest extends GoogleGDataRequest {
+
+  private static final Logger logger =
+      Logger.getLogger(PooledGDataRequest.class.getName());
+
+  /**
+   * The PooledGDataRequest.Factory class is a factory class for constructing
+   * new PooledGDataRequest instances.  Each factory owns its own connection
+   * pool, so a single factory should be shared by all requests that target
+   * the same set of hosts.
+   */
+  public static class Factory extends GoogleGDataRequest.Factory {
+
+    /**
+     * Default maximum number of concurrent connections per host.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+    /**
+     * Default number of milliseconds after which an idle connection is
+     * closed.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+
+    private final ConcurrentMap<String, HostPool> hostPools =
+        new ConcurrentHashMap<String, HostPool>();
+
+    private volatile int maxConnectionsPerHost =
+        DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private volatile long leaseTimeout = 0;
+
+    /**
+     * Sets the maximum number of concurrent connections to a single host.
+     * The new limit applies to hosts that are contacted after the call.
+     *
+     * @param maxConnections maximum number of connections per host.
+     * @throws IllegalArgumentException if the value is not positive.
+     */
+    public void setMaxConnectionsPerHost(int maxConnections) {
+      if (maxConnections <= 0) {
+        throw new IllegalArgumentException(
+            "Maximum connections must be positive");
+      }
+      this.maxConnectionsPerHost = maxConnections;
+    }
+
+    /**
+     * Returns the maximum number of concurrent connections to a single host.
+     */
+    public int getMaxConnectionsPerHost() {
+      return maxConnectionsPerHost;
+    }
+
+    /**
+     * Sets the number of milliseconds after which an idle connection is
+     * closed.
+     *
+     * @param timeout idle timeout in milliseconds.
+     * @throws IllegalArgumentException if the timeout is negative.
+     */
+    public void setIdleTimeout(long timeout) {
+      if (timeout < 0) {
+        throw new IllegalArgumentException("Timeout cannot be negative");
+      }
+      this.idleTimeout = timeout;
+    }
+
+    /**
+     * Returns the number of milliseconds after which an idle connection is
+     * closed.
+     */
+    public long getIdleTimeout() {
+      return idleTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds to wait for a connection when all
+     * connections to a host are in use.  A value of zero (the default) waits
+     * indefinitely.
+     *
+     * @param timeout lease timeout in milliseconds.
+     * @throws IllegalArgumentException if the timeout is negative.
+     */
+    public void setLeaseTimeout(long timeout) {
+      if (timeout < 0) {
+        throw new IllegalArgumentException("Timeout cannot be negative");
+      }
+      this.leaseTimeout = timeout;
+    }
+
+    /**
+     * Closes all connections that have been idle for longer than the idle
+     * timeout.  Expired connections of a host are also closed whenever a new
+     * request to that host is created, so calling this method is only needed
+     * to release sockets of hosts that are no longer used.
+     */
+    public void evictIdleConnections() {
+      long idleSince = System.currentTimeMillis() - idleTimeout;
+      for (HostPool pool : hostPools.values()) {
+        pool.evictIdle(idleSince);
+      }
+    }
+
+    /**
+     * Closes all idle connections, regardless of their age.  Connections
+     * that are currently leased are not affected.
+     */
+    public void closeIdleConnections() {
+      for (HostPool pool : hostPools.values()) {
+        pool.evictIdle(Long.MAX_VALUE);
+      }
+    }
+
+    /**
+     * Returns the connection pool associated with the host of the URL,
+     * creating it if necessary.
+     */
+    private HostPool getHostPool(URL url) {
+      String key = url.getProtocol() + "://" + url.getHost() + ":"
+          + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+      HostPool pool = hostPools.get(key);
+      if (pool == null) {
+        HostPool newPool = new HostPool(key, maxConnectionsPerHost);
+        pool = hostPools.putIfAbsent(key, newPool);
+        if (pool == null) {
+          pool = newPool;
+        }
+      }
+      pool.evictIdle(System.currentTimeMillis() - idleTimeout);
+      return pool;
+    }
+
+    @SuppressWarnings("unused")
+    @Override
+    public GDataRequest getRequest(RequestType type,
+                                   URL requestUrl,
+                                   ContentType contentType)
+        throws IOException, ServiceException {
+      if (this.useSsl && !requestUrl.getProtocol().startsWith("https")) {
+        requestUrl = new URL(
+            requestUrl.toString().replaceFirst("http", "https"));
+      }
+      return new PooledGDataRequest(type, requestUrl, contentType,
+          authToken, headerMap, privateHeaderMap,
+          getHostPool(requestUrl), leaseTimeout);
+    }
+
+    @SuppressWarnings("unused")
+    @Override
+    public GDataRequest getRequest(Query query, ContentType contentType)
+        throws IOException, ServiceException {
+      return getRequest(RequestType.QUERY, query.getUrl(), contentType);
+    }
+  }
+
+
+  /**
+   * Bookkeeping for the connections to a single host.  Leases are bounded by
+   * a semaphore; idle connections are kept in least recently used order so
+   * the oldest ones can be closed first.
+   */
+  private static class HostPool {
+
+    private final String key;
+    private final int maxConnections;
+    private final Semaphore leases;
+
+    /** Connections whose response has been consumed, oldest first. */
+    private final LinkedList<IdleConnection> idle =
+        new LinkedList<IdleConnection>();
+
+    HostPool(String key, int maxConnections) {
+      this.key = key;
+      this.maxConnections = maxConnections;
+      this.leases = new Semaphore(maxConnections, true);
+    }
+
+    void lease(long timeout) throws IOException {
+      try {
+        if (timeout == 0) {
+          leases.acquire();
+        } else if (!leases.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+          throw new IOException("Timed out waiting for a connection to "
+              + key);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while waiting for a connection to " + key);
+      }
+
+      // The socket of the most recently released connection will be picked
+      // up by the JDK keep-alive cache, so stop tracking it as idle.
+      synchronized (this) {
+        if (!idle.isEmpty()) {
+          idle.removeLast();
+        }
+      }
+    }
+
+    void release(HttpURLConnection conn, boolean reusable) {
+      if (reusable) {
+        IdleConnection evicted = null;
+        synchronized (this) {
+          idle.addLast(new IdleConnection(conn, System.currentTimeMillis()));
+          if (idle.size() > maxConnections) {
+            evicted = idle.removeFirst();
+          }
+        }
+        if (evicted != null) {
+          evicted.conn.disconnect();
+        }
+      } else {
+        conn.disconnect();
+      }
+      leases.release();
+    }
+
+    void evictIdle(long idleSince) {
+      LinkedList<IdleConnection> expired = null;
+      synchronized (this) {
+        while (!idle.isEmpty() && idle.getFirst().releaseTime <= idleSince) {
+          if (expired == null) {
+            expired = new LinkedList<IdleConnection>();
+          }
+          expired.add(idle.removeFirst());
+        }
+      }
+      if (expired != null) {
+        if (logger.isLoggable(Level.FINE)) {
+          logger.fine("Closing " + expired.size() + " idle connection(s) to "
+              + key);
+        }
+        for (IdleConnection c : expired) {
+          c.conn.disconnect();
+        }
+      }
+    }
+  }
+
+
+  /**
+   * A completed connection whose socket is parked in the keep-alive cache.
+   * Disconnecting it closes the idle socket.
+   */
+  private static class IdleConnection {
+
+    final HttpURLConnection conn;
+    final long releaseTime;
+
+    IdleConnection(HttpURLConnection conn, long releaseTime) {
+      this.conn = conn;
+      this.releaseTime = releaseTime;
+    }
+  }
+
+
+  /**
+   * Response stream that drains any unread data on close, so the socket can
+   * be kept alive, and then returns the connection to the pool.
+   */
+  private class PooledInputStream extends FilterInputStream {
+
+    private boolean closed = false;
+
+    PooledInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      boolean reusable = false;
+      try {
+        // Large unread remainders are cheaper to drop with the socket.
+        byte[] buf = new byte[DRAIN_BUFFER_SIZE];
+        int drained = 0;
+        int read;
+        while (drained <= MAX_DRAIN_SIZE && (read = in.read(buf)) != -1) {
+          drained += read;
+        }
+        reusable = drained <= MAX_DRAIN_SIZE;
+        in.close();
+      } finally {
+        releaseConnection(reusable);
+      }
+    }
+  }
+
+  private static final int DRAIN_BUFFER_SIZE = 4096;
+
+  private static final int MAX_DRAIN_SIZE = 64 * 1024;
+
+
+  /**
+   * The pool of the host targeted by this request.
+   */
+  private final HostPool hostPool;
+
+  /**
+   * Milliseconds to wait for a connection lease, zero to wait indefinitely.
+   */
+  private final long leaseTimeout;
+
+  /**
+   * Set while this request holds a connection lease.
+   */
+  private boolean leased = false;
+
+  /**
+   * Constructs a new PooledGDataRequest instance of the specified
+   * RequestType, targeting the specified URL with the specified
+   * authentication token.
+   *
+   * @param type type of GDataRequest
+   * @param requestUrl request target URL
+   * @param contentType the content type of request/response data
+   * @param authToken token authenticating request to server
+   * @param headerMap map containing additional headers to set
+   * @param privateHeaderMap map containing additional headers to set
+   *    that should not be logged (eg. authentication info)
+   * @param hostPool connection pool of the target host
+   * @param leaseTimeout milliseconds to wait for a connection
+   * @throws IOException on error initializing service connection
+   */
+  private PooledGDataRequest(RequestType type,
+                             URL requestUrl,
+                             ContentType contentType,
+                             HttpAuthToken authToken,
+                             Map<String, String> headerMap,
+                             Map<String, String> privateHeaderMap,
+                             HostPool hostPool,
+                             long leaseTimeout)
+      throws IOException {
+
+    super(type, requestUrl, contentType, authToken,
+        headerMap, privateHeaderMap);
+    this.hostPool = hostPool;
+    this.leaseTimeout = leaseTimeout;
+  }
+
+  /**
+   * Leases a connection from the host pool, if not already done.  Obtaining
+   * the request stream opens the connection, so the lease may be taken
+   * before {@link #execute()}.
+   */
+  private synchronized void leaseConnection() throws IOException {
+    if (!leased) {
+      hostPool.lease(leaseTimeout);
+      leased = true;
+    }
+  }
+
+  /**
+   * Returns the leased connection to the host pool.
+   *
+   * @param reusable {@code true} if the response has been fully consumed and
+   *        the socket can be kept alive.
+   */
+  private synchronized void releaseConnection(boolean reusable) {
+    if (leased) {
+      leased = false;
+      hostPool.release(httpConn, reusable);
+    }
+  }
+
+  @Override
+  public OutputStream getRequestStream() throws IOException {
+    leaseConnection();
+    try {
+      return super.getRequestStream();
+    } catch (IOException e) {
+      releaseConnection(false);
+      throw e;
+    }
+  }
+
+  @Override
+  public void execute() throws IOException, ServiceException {
+    leaseConnection();
+    try {
+      super.execute();
+    } catch (IOException e) {
+      releaseConnection(false);
+      throw e;
+    } catch (ServiceException e) {
+      // The error body has been consumed by the exception; make sure the
+      // error stream is closed so the socket can be kept alive.
+      boolean reusable = true;
+      try {
+        InputStream errorStream = httpConn.getErrorStream();
+        if (errorStream != null) {
+          errorStream.close();
+        }
+      } catch (IOException ioe) {
+        reusable = false;
+      }
+      releaseConnection(reusable);
+      throw e;
+    } catch (RuntimeException e) {
+      releaseConnection(false);
+      throw e;
+    }
+
+    if (!hasOutput) {
+      releaseConnection(true);
+    }
+  }
+
+  @Override
+  public InputStream getResponseStream() throws IOException {
+    InputStream responseStream;
+    try {
+      responseStream = super.getResponseStream();
+    } catch (IOException e) {
+      releaseConnection(false);
+      throw e;
+    }
+    return new PooledInputStream(responseStream);
+  }
+}
@@ -0,0 +1,199 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the targets of redirect responses, so requests to a URL that was
+ * redirected before can go straight to the redirect target instead of paying
+ * for an extra round trip.  Permanent redirects are remembered until they are
+ * evicted by newer entries; temporary redirects are only remembered if a
+ * time to live has been configured with {@link #setTemporaryRedirectTtl}.
+ *
+ *
+ */
+public class RedirectCache {
+
+  private static final Logger logger =
+      Logger.getLogger(RedirectCache.class.getName());
+
+  /**
+   * Default maximum number of remembered redirects.
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 256;
+
+  /**
+   * Default maximum number of cached redirects followed when resolving a URL.
+   */
+  public static final int DEFAULT_MAX_REDIRECTS = 5;
+
+  /**
+   * HTTP status code for a permanent redirect that keeps the request method.
+   */
+  private static final int HTTP_PERMANENT_REDIRECT = 308;
+
+  private static class Target {
+
+    final URL url;
+    final long expires;
+
+    Target(URL url, long expires) {
+      this.url = url;
+      this.expires = expires;
+    }
+  }
+
+  private final Map<String, Target> targets;
+
+  private volatile long temporaryRedirectTtl = 0;
+
+  private volatile int maxRedirects = DEFAULT_MAX_REDIRECTS;
+
+  /**
+   * Constructs a cache remembering at most {@link #DEFAULT_MAX_ENTRIES}
+   * redirects.
+   */
+  public RedirectCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Constructs a cache remembering at most {@code maxEntries} redirects,
+   * evicting the least recently used ones first.
+   *
+   * @param maxEntries maximum number of remembered redirects
+   */
+  public RedirectCache(final int maxEntries) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be positive");
+    }
+    targets = new LinkedHashMap<String, Target>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Target> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Sets the number of milliseconds during which the target of a temporary
+   * redirect is reused.  The default value of zero disables caching of
+   * temporary redirects.
+   *
+   * @param ttl time to live in milliseconds
+   */
+  public void setTemporaryRedirectTtl(long ttl) {
+    if (ttl < 0) {
+      throw new IllegalArgumentException("TTL cannot be negative");
+    }
+    temporaryRedirectTtl = ttl;
+  }
+
+  /**
+   * Sets the maximum number of cached redirects followed when resolving a
+   * URL, which also guards against redirect loops.
+   *
+   * @param maxRedirects maximum number of followed redirects
+   */
+  public void setMaxRedirects(int maxRedirects) {
+    if (maxRedirects < 0) {
+      throw new IllegalArgumentException("maxRedirects cannot be negative");
+    }
+    this.maxRedirects = maxRedirects;
+  }
+
+  /**
+   * Records a redirect response.
+   *
+   * @param source URL of the redirected request
+   * @param statusCode HTTP status code of the redirect response
+   * @param location value of the Location header, possibly relative
+   */
+  public void put(URL source, int statusCode, String location) {
+    if (location == null) {
+      return;
+    }
+    long expires;
+    if (statusCode == HttpURLConnection.HTTP_MOVED_PERM
+        || statusCode == HTTP_PERMANENT_REDIRECT) {
+      expires = Long.MAX_VALUE;
+    } else if (temporaryRedirectTtl > 0) {
+      expires = System.currentTimeMillis() + temporaryRedirectTtl;
+    } else {
+      return;
+    }
+
+    URL target;
+    try {
+      target = new URL(source, location);
+    } catch (MalformedURLException e) {
+      return;
+    }
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("Caching redirect " + source + " -> " + target);
+    }
+    synchronized (targets) {
+      targets.put(source.toExternalForm(), new Target(target, expires));
+    }
+  }
+
+  /**
+   * Returns the URL that a request to {@code url} should be sent to,
+   * following cached redirects, or {@code url} itself if it has not been
+   * redirected.
+   *
+   * @param url request URL
+   * @return final known target of the URL
+   */
+  public URL resolve(URL url) {
+    synchronized (targets) {
+      if (targets.isEmpty()) {
+        return url;
+      }
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < maxRedirects; i++) {
+        String key = url.toExternalForm();
+        Target target = targets.get(key);
+        if (target == null) {
+          break;
+        }
+        if (target.expires <= now) {
+          targets.remove(key);
+          break;
+        }
+        url = target.url;
+      }
+      return url;
+    }
+  }
+
+  /**
+   * Forgets all cached redirects.
+   */
+  public void clear() {
+    synchronized (targets) {
+      targets.clear();
+    }
+  }
+}
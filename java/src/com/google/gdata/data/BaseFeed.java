@@ -180,6 +180,25 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
   /** Feed entries. */
   protected List<E> entries = new LinkedList<E>();
 
+  /**
+   * The EntryListener interface receives the entries of a feed one at a time,
+   * as soon as each entry has been parsed.  Entries delivered to a listener
+   * are not added to the feed, so they can be garbage collected once the
+   * listener is done with them.
+   */
+  public interface EntryListener<E> {
+
+    /**
+     * Called when the closing tag of an entry has been parsed.
+     *
+     * @param entry the parsed entry.
+     */
+    public void entryParsed(E entry);
+  }
+
+  /** Listener receiving parsed entries, or {@code null} to keep them. */
+  protected EntryListener<? super E> entryListener;
+
   /**
    * Copy constructor that initializes a new BaseFeed instance to have
    * identical contents to another instance, using a shared reference to
@@ -307,6 +326,18 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
    */
   public void setItemsPerPage(int v) { feedState.itemsPerPage = v; }
 
+  /**
+   * Sets the listener that will receive the entries of this feed while it is
+   * being parsed.  If a listener is set, parsed entries are passed to the
+   * listener instead of being added to the list of entries.
+   *
+   * @param listener entry listener, or {@code null} to collect the entries
+   *     in the feed.
+   */
+  public void setEntryListener(EntryListener<? super E> listener) {
+    this.entryListener = listener;
+  }
+
   /** Returns the list of entries in this feed */
   public List<E> getEntries() { return entries; }
 
@@ -840,9 +871,14 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
         if (localName.equals("entry")) {
 
           E entry = createEntry();
-          entries.add(entry);
-          return ((BaseEntry<?>) entry).new AtomHandler(
-              extProfile);
+          if (entryListener == null) {
+            entries.add(entry);
+            return ((BaseEntry<?>) entry).new AtomHandler(
+                extProfile);
+          }
+
+          // Hand the completed entry to the listener instead of keeping it.
+          return new ListenedEntryHandler(entry, extProfile);
         }
 
         // All other elements in the Atom namespace are handled by
@@ -867,6 +903,25 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
     }
 
 
+    /** {@code <atom:entry>} parser passing the entry to the listener. */
+    private class ListenedEntryHandler extends BaseEntry<E>.AtomHandler {
+
+      private final E entry;
+
+      @SuppressWarnings("unchecked")
+      ListenedEntryHandler(E entry, ExtensionProfile extProfile) {
+        entry.super(extProfile);
+        this.entry = entry;
+      }
+
+      @Override
+      public void processEndElement() throws ParseException {
+        super.processEndElement();
+        entryListener.entryParsed(entry);
+      }
+    }
+
+
     /** {@code <opensearch:totalResults>} parser. */
     private class TotalResultsHandler extends ElementHandler {
 
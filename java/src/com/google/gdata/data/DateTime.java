@@ -168,14 +168,55 @@ public class DateTime implements Comparable<Object> {
   @Override
   public String toString() {
 
-    StringBuilder sb = new StringBuilder();
+    StringBuilder sb = new StringBuilder(29);
 
-    Calendar dateTime = new GregorianCalendar(GMT);
     long localTime = value;
     if (tzShift != null) {
      localTime += tzShift.longValue() * 60000;
     }
 
+    if (localTime < GREGORIAN_CUTOVER) {
+      return toStringCalendar(localTime);
+    }
+
+    long days = floorDiv(localTime, MS_PER_DAY);
+    int millisOfDay = (int) (localTime - days * MS_PER_DAY);
+
+    try {
+
+      appendDate(sb, days);
+
+      if (!dateOnly) {
+
+        sb.append('T');
+        appendInt(sb, millisOfDay / 3600000, 2);
+        sb.append(':');
+        appendInt(sb, millisOfDay / 60000 % 60, 2);
+        sb.append(':');
+        appendInt(sb, millisOfDay / 1000 % 60, 2);
+        sb.append('.');
+        appendInt(sb, millisOfDay % 1000, 3);
+      }
+
+      appendTzShift(sb);
+
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new RuntimeException(e);
+    }
+
+    return sb.toString();
+  }
+
+
+  /**
+   * Formats a local time before the Gregorian cutover, which
+   * {@link GregorianCalendar} expresses in the Julian calendar.
+   */
+  private String toStringCalendar(long localTime) {
+
+    StringBuilder sb = new StringBuilder();
+
+    Calendar dateTime = new GregorianCalendar(GMT);
     dateTime.setTimeInMillis(localTime);
 
     try {
@@ -201,29 +242,8 @@ public class DateTime implements Comparable<Object> {
         }
       }
 
-      if (tzShift != null) {
-        
-        if (tzShift.intValue() == 0) {
-          
-          sb.append('Z');
-          
-        } else {
-          
-          int absTzShift = tzShift.intValue();
-          if (tzShift > 0) {
-            sb.append('+');
-          } else {
-            sb.append('-');
-            absTzShift = -absTzShift;
-          }
-          
-          int tzHours = absTzShift / 60;
-          int tzMinutes = absTzShift % 60;
-          appendInt(sb, tzHours, 2);
-          sb.append(':');
-          appendInt(sb, tzMinutes, 2);
-        }
-      }
+      appendTzShift(sb);
+
     } catch (ArrayIndexOutOfBoundsException e) {
       throw new RuntimeException(e);
     }
@@ -232,6 +252,35 @@ public class DateTime implements Comparable<Object> {
   }
 
 
+  /** Appends the time zone shift, if any, to a string builder. */
+  private void appendTzShift(StringBuilder sb) {
+
+    if (tzShift != null) {
+
+      if (tzShift.intValue() == 0) {
+
+        sb.append('Z');
+
+      } else {
+
+        int absTzShift = tzShift.intValue();
+        if (tzShift > 0) {
+          sb.append('+');
+        } else {
+          sb.append('-');
+          absTzShift = -absTzShift;
+        }
+
+        int tzHours = absTzShift / 60;
+        int tzMinutes = absTzShift % 60;
+        appendInt(sb, tzHours, 2);
+        sb.append(':');
+        appendInt(sb, tzMinutes, 2);
+      }
+    }
+  }
+
+
   /** Formats the value as an RFC 822 date/time. */
   public String toStringRfc822() {
     assert !dateOnly;
@@ -282,6 +331,11 @@ public class DateTime implements Comparable<Object> {
   public static DateTime parseDateTime(String str)
       throws NumberFormatException {
 
+    DateTime ret = parseRfc3339(str, false);
+    if (ret != null) {
+      return ret;
+    }
+
     Matcher m = str == null ? null : dateTimePattern.matcher(str);
 
     if (str == null || !m.matches()) {
@@ -302,7 +356,7 @@ public class DateTime implements Comparable<Object> {
     System.out.println("TZ Minute: " + m.group(13));
     */
 
-    DateTime ret = new DateTime();
+    ret = new DateTime();
     ret.dateOnly = false;
 
     if (m.group(9) == null) {
@@ -344,6 +398,11 @@ public class DateTime implements Comparable<Object> {
   public static DateTime parseDate(String str)
       throws NumberFormatException {
 
+    DateTime ret = parseRfc3339(str, true);
+    if (ret != null) {
+      return ret;
+    }
+
     Matcher m = str == null ? null : datePattern.matcher(str);
 
     if (str == null || !m.matches()) {
@@ -360,7 +419,7 @@ public class DateTime implements Comparable<Object> {
     System.out.println("TZ Minute: " + m.group(8));
     */
 
-    DateTime ret = new DateTime();
+    ret = new DateTime();
     ret.dateOnly = true;
 
     if (m.group(4) == null) {
@@ -399,6 +458,14 @@ public class DateTime implements Comparable<Object> {
   public static DateTime parseDateTimeChoice(String value)
       throws NumberFormatException {
 
+    DateTime ret = parseRfc3339(value, false);
+    if (ret == null) {
+      ret = parseRfc3339(value, true);
+    }
+    if (ret != null) {
+      return ret;
+    }
+
     NumberFormatException exception;
 
     try {
@@ -417,6 +484,213 @@ public class DateTime implements Comparable<Object> {
   }
 
 
+  /**
+   * Start of the Gregorian calendar in {@link GregorianCalendar}, as ms since
+   * the Unix epoch (1582-10-15T00:00:00Z).
+   */
+  private static final long GREGORIAN_CUTOVER = -12219292800000L;
+
+  /** First year fully in the Gregorian calendar. */
+  private static final int GREGORIAN_YEAR = 1583;
+
+  private static final long MS_PER_DAY = 86400000L;
+
+  /** Days before each month of a non-leap year. */
+  private static final int[] DAYS_BEFORE_MONTH =
+    { 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334 };
+
+
+  /**
+   * Parses the usual form of an xs:dateTime or xs:date string without
+   * regular expressions or {@link Calendar}.  Returns {@code null} if the
+   * string is not in that form, or has out of range fields that the lenient
+   * calendar used by the pattern-based parser would normalize, in which case
+   * the caller falls back to that parser.
+   */
+  private static DateTime parseRfc3339(String str, boolean dateOnly) {
+
+    if (str == null || str.length() < 10
+        || str.charAt(4) != '-' || str.charAt(7) != '-') {
+      return null;
+    }
+
+    int year = parseDigits(str, 0, 4);
+    int month = parseDigits(str, 5, 2);
+    int day = parseDigits(str, 8, 2);
+    if (year < GREGORIAN_YEAR || month < 1 || month > 12 || day < 1
+        || day > daysInMonth(year, month)) {
+      return null;
+    }
+
+    long localTime = daysSinceEpoch(year, month, day) * MS_PER_DAY;
+    int pos = 10;
+
+    if (!dateOnly) {
+
+      if (str.length() < 19
+          || (str.charAt(10) != 'T' && str.charAt(10) != 't')
+          || str.charAt(13) != ':' || str.charAt(16) != ':') {
+        return null;
+      }
+
+      int hour = parseDigits(str, 11, 2);
+      int minute = parseDigits(str, 14, 2);
+      int second = parseDigits(str, 17, 2);
+      if (hour < 0 || hour > 23 || minute < 0 || minute > 59
+          || second < 0 || second > 59) {
+        return null;
+      }
+      localTime += hour * 3600000 + minute * 60000 + second * 1000;
+      pos = 19;
+
+      // Fractional seconds are truncated to milliseconds.
+      if (pos < str.length() && str.charAt(pos) == '.') {
+        int start = ++pos;
+        int millis = 0;
+        while (pos < str.length()) {
+          char c = str.charAt(pos);
+          if (c < '0' || c > '9') {
+            break;
+          }
+          if (pos - start < 3) {
+            millis = millis * 10 + (c - '0');
+          }
+          ++pos;
+        }
+        if (pos == start) {
+          return null;
+        }
+        for (int i = pos - start; i < 3; i++) {
+          millis *= 10;
+        }
+        localTime += millis;
+      }
+    }
+
+    Integer tzShift = null;
+    if (pos < str.length()) {
+      char c = str.charAt(pos);
+      if (c == 'Z' || c == 'z') {
+        tzShift = 0;
+        ++pos;
+      } else if ((c == '+' || c == '-') && pos + 6 <= str.length()
+          && str.charAt(pos + 3) == ':') {
+        int tzHours = parseDigits(str, pos + 1, 2);
+        int tzMinutes = parseDigits(str, pos + 4, 2);
+        if (tzHours < 0 || tzMinutes < 0) {
+          return null;
+        }
+        int shift = tzHours * 60 + tzMinutes;
+        tzShift = c == '-' ? -shift : shift;
+        pos += 6;
+      } else {
+        return null;
+      }
+    }
+    if (pos != str.length()) {
+      return null;
+    }
+
+    DateTime ret = new DateTime();
+    ret.dateOnly = dateOnly;
+    ret.tzShift = tzShift;
+    ret.value = localTime;
+    if (tzShift != null) {
+      ret.value -= tzShift.intValue() * 60000;
+    }
+    return ret;
+  }
+
+
+  /**
+   * Parses a fixed number of ASCII digits, or returns -1 if one of the
+   * characters is not a digit.
+   */
+  private static int parseDigits(String str, int start, int count) {
+
+    int num = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = str.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      num = num * 10 + (c - '0');
+    }
+    return num;
+  }
+
+
+  private static boolean isLeapYear(long year) {
+    return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+  }
+
+
+  private static int daysInMonth(int year, int month) {
+
+    if (month == 2) {
+      return isLeapYear(year) ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+
+  /**
+   * Returns the number of days between the Unix epoch and a date of the
+   * proleptic Gregorian calendar, for a year of at least
+   * {@link #GREGORIAN_YEAR}.
+   */
+  private static long daysSinceEpoch(int year, int month, int day) {
+
+    int y = year - 1;
+    long days = 365L * y + y / 4 - y / 100 + y / 400
+        + DAYS_BEFORE_MONTH[month - 1] + day - 1;
+    if (month > 2 && isLeapYear(year)) {
+      ++days;
+    }
+    // Days between 0001-01-01 and 1970-01-01.
+    return days - 719162;
+  }
+
+
+  /**
+   * Appends the proleptic Gregorian date of a number of days since the Unix
+   * epoch to a string builder.
+   */
+  private static void appendDate(StringBuilder sb, long days) {
+
+    // Shift the epoch to 0000-03-01, so that leap days end each cycle.
+    long z = days + 719468;
+    long era = (z >= 0 ? z : z - 146096) / 146097;
+    long dayOfEra = z - era * 146097;
+    long yearOfEra =
+        (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096)
+        / 365;
+    long dayOfYear =
+        dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int shiftedMonth = (int) ((5 * dayOfYear + 2) / 153);
+    int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+    int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+    appendInt(sb, (int) year, 4);
+    sb.append('-');
+    appendInt(sb, month, 2);
+    sb.append('-');
+    appendInt(sb, day, 2);
+  }
+
+
+  /** Returns the largest value not greater than {@code a / b}. */
+  private static long floorDiv(long a, long b) {
+
+    long q = a / b;
+    if ((a % b != 0) && ((a ^ b) < 0)) {
+      --q;
+    }
+    return q;
+  }
+
+
   /** Appends a zero-padded number to a string builder. */
   private static void appendInt(StringBuilder sb, int num, int numDigits) {
 
@@ -425,12 +699,11 @@ public class DateTime implements Comparable<Object> {
       num = -num;
     }
 
-    char[] digits = new char[numDigits];
-    for (int digit = numDigits - 1; digit >= 0; --digit) {
-      digits[digit] = (char)('0' + num % 10);
+    int length = sb.length() + numDigits;
+    sb.setLength(length);
+    for (int digit = length - 1; digit >= length - numDigits; --digit) {
+      sb.setCharAt(digit, (char)('0' + num % 10));
       num /= 10;
     }
-
-    sb.append(digits);
   }
 }
@@ -29,6 +29,9 @@ import java.io.IOException;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -63,6 +66,12 @@ public class ExtensionDescription extends ExtensionPoint
    */
   private Class<? extends Extension> extensionClass;
 
+  /**
+   * Cached no-argument constructor of {@link #extensionClass}, used to
+   * create extensions while parsing.
+   */
+  private volatile Constructor<? extends Extension> extensionConstructor;
+
   /**
    * Specifies whether the extension is required within its parent extension
    * point.
@@ -203,6 +212,7 @@ public class ExtensionDescription extends ExtensionPoint
 
   public void setExtensionClass(Class<? extends Extension> extensionClass) {
     this.extensionClass = extensionClass;
+    this.extensionConstructor = null;
   }
 
   final public Class<? extends Extension> getExtensionClass() {
@@ -227,6 +237,37 @@ public class ExtensionDescription extends ExtensionPoint
 
   final public boolean isAggregate() { return aggregate; }
 
+  /**
+   * Creates a new instance of the extension class, using its no-argument
+   * constructor.  The constructor is looked up once per description.
+   *
+   * @throws ParseException if the extension cannot be created
+   */
+  Extension createExtension() throws ParseException {
+
+    Constructor<? extends Extension> constructor = extensionConstructor;
+    try {
+      if (constructor == null) {
+        constructor = extensionClass.getDeclaredConstructor();
+        if (!Modifier.isPublic(constructor.getModifiers())
+            || !Modifier.isPublic(extensionClass.getModifiers())) {
+          constructor.setAccessible(true);
+        }
+        extensionConstructor = constructor;
+      }
+      return constructor.newInstance();
+    } catch (NoSuchMethodException e) {
+      throw new ParseException(CoreErrorDomain.ERR.cantCreateExtension, e);
+    } catch (InstantiationException e) {
+      throw new ParseException(CoreErrorDomain.ERR.cantCreateExtension, e);
+    } catch (IllegalAccessException e) {
+      throw new ParseException(CoreErrorDomain.ERR.cantCreateExtension, e);
+    } catch (InvocationTargetException e) {
+      throw new ParseException(CoreErrorDomain.ERR.cantCreateExtension,
+          e.getCause());
+    }
+  }
+
   /**
    * Defines a natural ordering for ExtensionDescription based upon
    * the qualified name of the mapped XML element.  Elements with no
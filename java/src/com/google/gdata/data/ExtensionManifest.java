@@ -50,6 +50,13 @@ public class ExtensionManifest {
   final Map<Pair<String, String>, ExtensionDescription> supportedExtensions =
     new HashMap<Pair<String, String>, ExtensionDescription>();
 
+  /**
+   * Index of {@link #supportedExtensions} by namespace URI, then local name,
+   * so that parsing can look up descriptions without allocating keys.
+   */
+  private final Map<String, Map<String, ExtensionDescription>> extensionIndex =
+    new HashMap<String, Map<String, ExtensionDescription>>();
+
   /**
    * Specifies whether the extension point supports arbitrary XML
    * ({code xs:any}). If it does, it is available through
@@ -72,6 +79,56 @@ public class ExtensionManifest {
     this.extendedType = extendedType;
   }
 
+  /**
+   * Adds a supported extension to the manifest.
+   */
+  void putExtension(Pair<String, String> extensionQName,
+      ExtensionDescription extDescription) {
+
+    supportedExtensions.put(extensionQName, extDescription);
+
+    Map<String, ExtensionDescription> localNames =
+        extensionIndex.get(extensionQName.getFirst());
+    if (localNames == null) {
+      localNames = new HashMap<String, ExtensionDescription>();
+      extensionIndex.put(extensionQName.getFirst(), localNames);
+    }
+    localNames.put(extensionQName.getSecond(), extDescription);
+  }
+
+  /**
+   * Adds all the supported extensions of another manifest.
+   */
+  void putAllExtensions(ExtensionManifest manifest) {
+
+    for (Map.Entry<Pair<String, String>, ExtensionDescription> extension :
+        manifest.supportedExtensions.entrySet()) {
+      putExtension(extension.getKey(), extension.getValue());
+    }
+  }
+
+  /**
+   * Retrieves the description of an extension element, looking for an exact
+   * match and then for a wildcard ({@code *}) local name in the namespace.
+   *
+   * @return the extension description or {@code null} if the element is not
+   *         a supported extension
+   */
+  public ExtensionDescription getDescription(String namespaceUri,
+      String localName) {
+
+    Map<String, ExtensionDescription> localNames =
+        extensionIndex.get(namespaceUri);
+    if (localNames == null) {
+      return null;
+    }
+    ExtensionDescription extDescription = localNames.get(localName);
+    if (extDescription == null) {
+      extDescription = localNames.get("*");
+    }
+    return extDescription;
+  }
+
   /**
    * Returns the Map from namespace/localname String pairs to supporting
    * Extension class and manifest information.
@@ -16,7 +16,6 @@
 
 package com.google.gdata.data;
 
-import com.google.gdata.util.common.base.Pair;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.client.CoreErrorDomain;
@@ -556,18 +555,9 @@ public class ExtensionPoint extends AbstractExtension {
 
     // Look for an explicit match, followed by a wildcarded namespace match.
     ExtensionDescription extDescription =
-        profManifest.supportedExtensions.get(
-            new Pair<String, String>(namespaceUri, localName));
-
+        profManifest.getDescription(namespaceUri, localName);
     if (extDescription == null) {
-
-      extDescription =
-          profManifest.supportedExtensions.get(new Pair<String, String>(
-              namespaceUri, "*"));
-
-      if (extDescription == null) {
-        return null;
-      }
+      return null;
     }
 
     Class<? extends Extension> extClass = extDescription.getExtensionClass();
@@ -585,15 +575,7 @@ public class ExtensionPoint extends AbstractExtension {
     boolean needsAdd = true;
     if (extension == null) {
       // Create an extension instance.
-      try {
-        extension = extClass.newInstance();
-      } catch (InstantiationException e) {
-        throw new ParseException(
-            CoreErrorDomain.ERR.cantCreateExtension, e);
-      } catch (IllegalAccessException e) {
-        throw new ParseException(
-            CoreErrorDomain.ERR.cantCreateExtension, e);
-      }
+      extension = extDescription.createExtension();
     } else {
       needsAdd = false;
     }
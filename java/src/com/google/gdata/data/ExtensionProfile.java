@@ -40,6 +40,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Specifies a complete extension profile for an extended GData schema.
@@ -49,6 +50,11 @@ import java.util.TreeSet;
  * For example, Calendar might allow {@code <gd:who>} within {@code
  * <atom:feed>}, and {@code <gd:when>}, {@code <gd:who>}, and {@code
  * <gd:where>} within {@code <atom:entry>}.
+ * <p>
+ * Once all extensions are declared, a profile can be {@link #freeze()
+ * frozen}.  A frozen profile can no longer be changed, resolves the
+ * manifest of each extension point class only once, and is read without
+ * locking, so it can be shared by any number of services and threads.
  *
  * 
  * 
@@ -67,6 +73,10 @@ public class ExtensionProfile {
    */
   public void addDeclarations(Kind.Adaptor adaptor) {
     Class<? extends Kind.Adaptor> adaptorClass = adaptor.getClass();
+    if (frozen && declared.contains(adaptorClass)) {
+      return;
+    }
+    checkNotFrozen();
     if (declared.add(adaptorClass)) {
       adaptor.declareExtensions(this);
     }
@@ -86,6 +96,8 @@ public class ExtensionProfile {
   public synchronized void declare(Class<? extends ExtensionPoint> extendedType,
                                    ExtensionDescription extDescription) {
 
+    checkNotFrozen();
+
     // When configuring an extension profile that is auto-extensible, remap
     // th extension point assocations from the specific type down to any
     // base adaptable type.  This ensures that extensions will be parseable
@@ -102,11 +114,11 @@ public class ExtensionProfile {
         new Pair<String,String>(extDescription.getNamespace().getUri(),
             extDescription.getLocalName());
 
-    manifest.supportedExtensions.put(extensionQName, extDescription);
+    manifest.putExtension(extensionQName, extDescription);
 
     // Propagate the declarations down to any profiled subtypes.
     for(ExtensionManifest subclassManifest : manifest.subclassManifests) {
-      subclassManifest.supportedExtensions.put(extensionQName, extDescription);
+      subclassManifest.putExtension(extensionQName, extDescription);
     }
 
     profile.put(extendedType, manifest);
@@ -204,6 +216,8 @@ public class ExtensionProfile {
   public synchronized void declareArbitraryXmlExtension(
       Class<? extends ExtensionPoint> extendedType) {
 
+    checkNotFrozen();
+
     ExtensionManifest manifest = getOrCreateManifest(extendedType);
     manifest.arbitraryXml = true;
 
@@ -219,33 +233,46 @@ public class ExtensionProfile {
 
   /** Specifies additional top-level namespace declarations. */
   public synchronized void declareAdditionalNamespace(XmlNamespace ns) {
+    checkNotFrozen();
     additionalNamespaces.add(ns);
   }
 
 
   /** Specifies the type of feeds nested within {@code <gd:feedLink>}. */
   public synchronized void declareFeedLinkProfile(ExtensionProfile profile) {
+    checkNotFrozen();
     feedLinkProfile = profile;
     nsDecls = null;
   }
 
 
   /** Retrieves the type of feeds nested within {@code <gd:feedLink>}. */
-  public synchronized ExtensionProfile getFeedLinkProfile() {
-    return feedLinkProfile;
+  public ExtensionProfile getFeedLinkProfile() {
+    if (frozen) {
+      return feedLinkProfile;
+    }
+    synchronized (this) {
+      return feedLinkProfile;
+    }
   }
 
 
   /** Specifies the type of entries nested within {@code <gd:entryLink>}. */
   public synchronized void declareEntryLinkProfile(ExtensionProfile profile) {
+    checkNotFrozen();
     entryLinkProfile = profile;
     nsDecls = null;
   }
 
 
   /** Retrieves the type of entries nested within {@code <gd:entryLink>}. */
-  public synchronized ExtensionProfile getEntryLinkProfile() {
-    return entryLinkProfile;
+  public ExtensionProfile getEntryLinkProfile() {
+    if (frozen) {
+      return entryLinkProfile;
+    }
+    synchronized (this) {
+      return entryLinkProfile;
+    }
   }
 
 
@@ -254,6 +281,21 @@ public class ExtensionProfile {
    * its superclasses) or {@code null} if not specified.
    */
   public ExtensionManifest getManifest(Class<?> extendedType) {
+    if (frozen && extendedType != null) {
+      ExtensionManifest manifest = resolvedManifests.get(extendedType);
+      if (manifest == null) {
+        manifest = findManifest(extendedType);
+        resolvedManifests.put(extendedType,
+            manifest == null ? NO_MANIFEST : manifest);
+      }
+      return manifest == NO_MANIFEST ? null : manifest;
+    }
+    return findManifest(extendedType);
+  }
+
+
+  /** Walks the superclasses of a type to find its manifest. */
+  private ExtensionManifest findManifest(Class<?> extendedType) {
     ExtensionManifest manifest = null;
     while (extendedType != null) {
       manifest = profile.get(extendedType);
@@ -276,16 +318,88 @@ public class ExtensionProfile {
 
 
   /** Retrieves a collection of all namespaces used by this profile. */
-  public synchronized Collection<XmlNamespace> getNamespaceDecls() {
+  public Collection<XmlNamespace> getNamespaceDecls() {
+
+    // The declarations of a frozen profile were computed by freeze(), and
+    // are published by the volatile read of frozen.
+    if (frozen) {
+      return nsDecls;
+    }
+
+    synchronized (this) {
+      if (nsDecls == null) {
+        nsDecls = computeNamespaceDecls();
+      }
+
+      return nsDecls;
+    }
+  }
+
+
+  /**
+   * Freezes the profile, so that it can be shared by services and parsers
+   * without being changed.  Later declarations throw an
+   * {@link IllegalStateException}.  The nested feed link and entry link
+   * profiles are frozen too.  Auto-extending profiles can't be frozen,
+   * since they declare extensions while parsing.
+   *
+   * @return this profile
+   * @throws IllegalStateException if the profile is auto-extending
+   */
+  public synchronized ExtensionProfile freeze() {
+
+    if (frozen) {
+      return this;
+    }
+    if (isAutoExtending) {
+      throw new IllegalStateException(
+          "An auto-extending extension profile can't be frozen");
+    }
+
+    nsDecls = computeNamespaceDecls();
+    resolvedManifests = new ConcurrentHashMap<Class<?>, ExtensionManifest>();
+    frozen = true;
 
-    if (nsDecls == null) {
-      nsDecls = computeNamespaceDecls();
+    if (feedLinkProfile != null && feedLinkProfile != this) {
+      feedLinkProfile.freeze();
     }
+    if (entryLinkProfile != null && entryLinkProfile != this) {
+      entryLinkProfile.freeze();
+    }
+    return this;
+  }
+
 
-    return nsDecls;
+  /** Returns whether the profile has been {@link #freeze() frozen}. */
+  public boolean isFrozen() {
+    return frozen;
   }
 
 
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new IllegalStateException("The extension profile is frozen");
+    }
+  }
+
+
+  /** Whether the profile has been frozen. */
+  private volatile boolean frozen = false;
+
+
+  /**
+   * Manifests resolved by {@link #getManifest} for each class once the
+   * profile is frozen, including {@link #NO_MANIFEST} for classes that have
+   * none.
+   */
+  private ConcurrentHashMap<Class<?>, ExtensionManifest> resolvedManifests;
+
+
+  /** Marker for classes without manifest in {@link #resolvedManifests}. */
+  private static final ExtensionManifest NO_MANIFEST =
+      new ExtensionManifest(null);
+
+
   /** Internal storage for the profile. */
   private final Map<Class<?>, ExtensionManifest> profile =
     new HashMap<Class<?>, ExtensionManifest>();
@@ -311,7 +425,10 @@ public class ExtensionProfile {
   /** Profile supports auto-extension declaration */
   private boolean isAutoExtending = false;
 
-  public void setAutoExtending(boolean v) { isAutoExtending = v; }
+  public void setAutoExtending(boolean v) {
+    checkNotFrozen();
+    isAutoExtending = v;
+  }
   public boolean isAutoExtending() { return isAutoExtending; }
 
   /**
@@ -334,7 +451,10 @@ public class ExtensionProfile {
    *
    * #see ExtensionPoint.getXmlBlob()
    */
-  public void setArbitraryXml(boolean v) { allowsArbitraryXml = v; }
+  public void setArbitraryXml(boolean v) {
+    checkNotFrozen();
+    allowsArbitraryXml = v;
+  }
 
   /**
    * Returns whether foreign XML elements will be preserved within any
@@ -372,8 +492,7 @@ public class ExtensionProfile {
     // to the subclass one so future declarations will propagate.
     while (!superManifests.empty()) {
       ExtensionManifest superManifest = superManifests.pop();
-      newManifest.supportedExtensions.putAll(
-          superManifest.supportedExtensions);
+      newManifest.putAllExtensions(superManifest);
       newManifest.arbitraryXml = superManifest.arbitraryXml;
       superManifest.subclassManifests.add(newManifest);
     }
@@ -42,6 +42,7 @@ public class EventSourceParser extends XmlParser {
   
   public void parse(XmlEventSource source) throws ParseException, IOException {
     try {
+      startDiagnostics();
       source.parse(this);
     } catch (SAXException e) {
       Exception rootException = e.getException();
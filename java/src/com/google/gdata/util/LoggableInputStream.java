@@ -18,32 +18,37 @@ package com.google.gdata.util;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
 import java.util.logging.Logger;
 
 /**
  *
  * Logs content of the data sent to the stream if log level is
- * set to FINEST.
+ * set to FINEST.  The logged content is bounded by {@link WireLog}.
  *
  * 
  */
 
 public class LoggableInputStream extends FilterInputStream {
-  private final StringWriter sw = new StringWriter();
+  private final WireLog.Capture capture;
   private final Logger logger;
   private boolean closed = false;
 
   public LoggableInputStream(Logger logger, InputStream stream) {
+    this(logger, stream, new WireLog());
+  }
+
+  public LoggableInputStream(Logger logger, InputStream stream,
+      WireLog wireLog) {
     super(stream);
     this.logger = logger;
+    this.capture = wireLog.newCapture();
   }
 
   @Override
   public void close() throws IOException {
     // circumvent double close
     if (!closed){
-      logger.finest(sw.toString());
+      capture.log(logger);
       closed = true;
     }
     super.close();
@@ -52,7 +57,9 @@ public class LoggableInputStream extends FilterInputStream {
   @Override
   public int read() throws IOException {
     int readInt = super.read();
-    sw.write(readInt);
+    if (readInt >= 0) {
+      capture.write(readInt);
+    }
     return readInt;
   }
 
@@ -60,19 +67,13 @@ public class LoggableInputStream extends FilterInputStream {
   public int read(byte[] b, int off, int len) throws IOException {
     int read = super.read(b, off, len);
     if (read > 0) {
-      String s = new String(b, off, read);
-      sw.write(s);
+      capture.write(b, off, read);
     }
     return read;
   }
 
   @Override
   public int read(byte[] b) throws IOException {
-    int read = super.read(b);
-    if (read > 0) {
-      String s = new String(b, 0, read);
-      sw.write(s);
-    }
-    return read;
+    return read(b, 0, b.length);
   }
 }
@@ -14,7 +14,6 @@
  */
 package com.google.gdata.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -23,39 +22,56 @@ import java.util.logging.Logger;
 /**
  *
  * Logs content of the data sent to the stream if log level is
- * set to FINEST.
+ * set to FINEST.  The logged content is bounded by {@link WireLog}.
  *
  * 
  *
  */
 public class LoggableOutputStream extends FilterOutputStream {
-  private ByteArrayOutputStream bos = new ByteArrayOutputStream();
+  private final WireLog wireLog;
+  private WireLog.Capture capture;
 
   private Logger logger;
 
   public LoggableOutputStream(Logger logger, OutputStream stream) {
+    this(logger, stream, new WireLog());
+  }
+
+  public LoggableOutputStream(Logger logger, OutputStream stream,
+      WireLog wireLog) {
     super(stream);
     this.logger = logger;
+    this.wireLog = wireLog;
+    this.capture = wireLog.newCapture();
   }
 
   @Override
   public void write(int b) throws IOException {
     // Write to the original stream
-    super.write(b);
+    out.write(b);
     // Write also to log
-    bos.write(b);
+    capture.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    out.write(b, off, len);
+    capture.write(b, off, len);
   }
 
   @Override
   public void close() throws IOException {
+    // FilterOutputStream.close() flushes, which logs the pending content
     super.close();
-    logger.finest(bos.toString()); //convert using the default charset
+    capture.close();
   }
 
   @Override
   public void flush() throws IOException {
     super.flush();
-    logger.finest(bos.toString());
-    bos = new ByteArrayOutputStream();
+    if (capture.getCount() > 0) {
+      capture.log(logger);
+      capture = wireLog.newCapture();
+    }
   }
 }
@@ -146,16 +146,7 @@ public class ParseUtil {
     boolean isAdapting = isAdapting(feedClass);
 
     // Create a new feed instance.
-    IFeed feed;
-    try {
-      feed = feedClass.newInstance();
-    } catch (IllegalAccessException iae) {
-      throw new ServiceException(
-          CoreErrorDomain.ERR.cantCreateFeed, iae);
-    } catch (InstantiationException ie) {
-      throw new ServiceException(
-          CoreErrorDomain.ERR.cantCreateFeed, ie);
-    }
+    IFeed feed = createFeed(feedClass);
 
     // Parse the content
     BaseFeed<?, ?> baseFeed = (BaseFeed<?, ?>) feed;
@@ -179,6 +170,24 @@ public class ParseUtil {
   }
   
 
+  /**
+   * Creates a new, empty instance of the feed class.
+   *
+   * @throws ServiceException if the feed cannot be created
+   */
+  public static <F extends IFeed> F createFeed(Class<F> feedClass)
+      throws ServiceException {
+    try {
+      return feedClass.newInstance();
+    } catch (IllegalAccessException iae) {
+      throw new ServiceException(
+          CoreErrorDomain.ERR.cantCreateFeed, iae);
+    } catch (InstantiationException ie) {
+      throw new ServiceException(
+          CoreErrorDomain.ERR.cantCreateFeed, ie);
+    }
+  }
+
   private static void parseEntry(ParseSource source, BaseEntry<?> entry,
       ExtensionProfile extProfile) throws ParseException, IOException {
     if (source.getReader() != null) {
@@ -192,7 +201,12 @@ public class ParseUtil {
     }
   }
   
-  private static void parseFeed(ParseSource source, BaseFeed<?, ?> feed,
+  /**
+   * Parses the content of the source into an existing feed instance.  This
+   * can be used to parse into a feed that has been configured beforehand,
+   * for example with a {@link BaseFeed.EntryListener}.
+   */
+  public static void parseFeed(ParseSource source, BaseFeed<?, ?> feed,
       ExtensionProfile extProfile) throws ParseException, IOException {
     if (source.getReader() != null) {
       feed.parseAtom(extProfile, source.getReader());
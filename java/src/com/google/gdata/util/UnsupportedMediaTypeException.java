@@ -0,0 +1,79 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.util;
+
+import java.net.HttpURLConnection;
+import java.io.IOException;
+
+/**
+ * Thrown by a service provider when the request data is in a format it
+ * doesn't support, such as a content encoding it can't decode.
+ *
+ * 
+ */
+public class UnsupportedMediaTypeException extends ServiceException {
+
+  private static final long serialVersionUID = 1L;
+
+  private boolean requestCompressed;
+
+  public UnsupportedMediaTypeException() {
+    super("Unsupported Media Type");
+    initResponseCode();
+  }
+
+  public UnsupportedMediaTypeException(String message) {
+    super(message);
+    initResponseCode();
+  }
+
+  public UnsupportedMediaTypeException(HttpURLConnection httpConn)
+      throws IOException {
+    super(httpConn);
+    initResponseCode();
+  }
+
+  public UnsupportedMediaTypeException(ErrorDomain.ErrorCode errorCode) {
+    super(errorCode);
+    initResponseCode();
+  }
+
+  public UnsupportedMediaTypeException(ErrorDomain.ErrorCode errorCode,
+      Throwable cause) {
+    super(errorCode, cause);
+    initResponseCode();
+  }
+
+  private void initResponseCode() {
+    setHttpErrorCodeOverride(HttpURLConnection.HTTP_UNSUPPORTED_TYPE);
+  }
+
+  /**
+   * Returns {@code true} if the rejected request data was sent compressed,
+   * with a {@code Content-Encoding} header.
+   */
+  public boolean isRequestCompressed() {
+    return requestCompressed;
+  }
+
+  /**
+   * Sets whether the rejected request data was sent compressed.
+   */
+  public void setRequestCompressed(boolean requestCompressed) {
+    this.requestCompressed = requestCompressed;
+  }
+}
@@ -0,0 +1,357 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.gdata.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded capture of the bytes going through a {@link LoggableInputStream}
+ * or {@link LoggableOutputStream}.
+ *
+ * Only the first {@link #getHeadLimit() head} bytes and the last
+ * {@link #getTailLimit() tail} bytes are kept, so logging large feeds does
+ * not hold the whole content in memory.  The bytes are decoded as UTF-8 only
+ * when the log record is formatted by a handler.  If spilling is enabled,
+ * content that does not fit is written in full to a temporary file, whose
+ * path is included in the log message.  At most
+ * {@link #MAX_SPILL_FILES_PROPERTY} temporary files are kept, the oldest
+ * being deleted first.  The remaining files are deleted by
+ * {@link #deleteSpillFiles()}, or when the virtual machine exits.
+ *
+ * The default limits are read from the system properties
+ * {@link #HEAD_PROPERTY}, {@link #TAIL_PROPERTY} and {@link #SPILL_PROPERTY}.
+ *
+ *
+ */
+public class WireLog {
+
+  private static final Logger LOGGER = Logger.getLogger(
+      WireLog.class.getName());
+
+  /**
+   * System property for the default number of bytes logged from the start of
+   * the content.
+   */
+  public static final String HEAD_PROPERTY =
+      "com.google.gdata.util.WireLog.head";
+
+  /**
+   * System property for the default number of bytes logged from the end of
+   * the content.
+   */
+  public static final String TAIL_PROPERTY =
+      "com.google.gdata.util.WireLog.tail";
+
+  /**
+   * If set, this System property enables writing content that exceeds the
+   * head and tail limits to a temporary file.
+   */
+  public static final String SPILL_PROPERTY =
+      "com.google.gdata.util.WireLog.spill";
+
+  /**
+   * System property for the maximum number of temporary files holding
+   * spilled content kept at once.
+   */
+  public static final String MAX_SPILL_FILES_PROPERTY =
+      "com.google.gdata.util.WireLog.maxSpillFiles";
+
+  /** Default value of {@link #HEAD_PROPERTY}. */
+  public static final int DEFAULT_HEAD_LIMIT = 16 * 1024;
+
+  /** Default value of {@link #TAIL_PROPERTY}. */
+  public static final int DEFAULT_TAIL_LIMIT = 4 * 1024;
+
+  /** Default value of {@link #MAX_SPILL_FILES_PROPERTY}. */
+  public static final int DEFAULT_MAX_SPILL_FILES = 16;
+
+  private static final int INITIAL_HEAD_SIZE = 1024;
+
+  private static final int MAX_SPILL_FILES = Math.max(1,
+      Integer.getInteger(MAX_SPILL_FILES_PROPERTY, DEFAULT_MAX_SPILL_FILES));
+
+  /** Spill files not deleted yet, oldest first.  Guarded by itself. */
+  private static final LinkedList<File> SPILL_FILES = new LinkedList<File>();
+
+  /** Deletes the spill files on exit, once the first one is created. */
+  private static Thread spillCleaner;
+
+  private final int headLimit;
+  private final int tailLimit;
+  private final boolean spill;
+
+  /**
+   * Creates a capture with the limits from the system properties.
+   */
+  public WireLog() {
+    this(Integer.getInteger(HEAD_PROPERTY, DEFAULT_HEAD_LIMIT),
+        Integer.getInteger(TAIL_PROPERTY, DEFAULT_TAIL_LIMIT),
+        Boolean.getBoolean(SPILL_PROPERTY));
+  }
+
+  /**
+   * Creates a capture with the given limits.
+   *
+   * @param headLimit number of bytes kept from the start of the content
+   * @param tailLimit number of bytes kept from the end of the content
+   * @param spill whether content exceeding the limits is written in full to
+   *        a temporary file
+   */
+  public WireLog(int headLimit, int tailLimit, boolean spill) {
+    if (headLimit < 0 || tailLimit < 0) {
+      throw new IllegalArgumentException("Negative limit");
+    }
+    this.headLimit = headLimit;
+    this.tailLimit = tailLimit;
+    this.spill = spill;
+  }
+
+  public int getHeadLimit() {
+    return headLimit;
+  }
+
+  public int getTailLimit() {
+    return tailLimit;
+  }
+
+  public boolean isSpill() {
+    return spill;
+  }
+
+  /**
+   * Deletes the temporary files holding spilled content.  The messages
+   * already logged keep referring to them.
+   */
+  public static void deleteSpillFiles() {
+    synchronized (SPILL_FILES) {
+      for (File file : SPILL_FILES) {
+        deleteSpillFile(file);
+      }
+      SPILL_FILES.clear();
+    }
+  }
+
+  /**
+   * Records a new spill file, deleting the oldest ones over the limit.
+   */
+  private static void addSpillFile(File file) {
+    synchronized (SPILL_FILES) {
+      if (spillCleaner == null) {
+        spillCleaner = new Thread("WireLog spill cleaner") {
+          @Override
+          public void run() {
+            deleteSpillFiles();
+          }
+        };
+        try {
+          Runtime.getRuntime().addShutdownHook(spillCleaner);
+        } catch (IllegalStateException e) {
+          // Already shutting down.
+        }
+      }
+      SPILL_FILES.add(file);
+      while (SPILL_FILES.size() > MAX_SPILL_FILES) {
+        deleteSpillFile(SPILL_FILES.removeFirst());
+      }
+    }
+  }
+
+  private static void deleteSpillFile(File file) {
+    if (!file.delete() && file.exists()) {
+      LOGGER.fine("Unable to delete " + file);
+    }
+  }
+
+  /**
+   * Starts capturing a new message.
+   */
+  Capture newCapture() {
+    return new Capture();
+  }
+
+  /**
+   * Bytes of one logged message.  The capture is handed to the logger as a
+   * message parameter once complete, and must not be written to afterwards.
+   */
+  class Capture {
+
+    private byte[] head = new byte[Math.min(headLimit, INITIAL_HEAD_SIZE)];
+    private int headCount;
+
+    /** Ring buffer of the last bytes, allocated once the head is full. */
+    private byte[] tail;
+    private int tailPos;
+
+    private long count;
+
+    private final byte[] single = new byte[1];
+
+    private File spillFile;
+    private OutputStream spillStream;
+
+    /** Returns the number of bytes written to the capture. */
+    long getCount() {
+      return count;
+    }
+
+    void write(int b) {
+      single[0] = (byte) b;
+      write(single, 0, 1);
+    }
+
+    void write(byte[] b, int off, int len) {
+      if (headCount < headLimit) {
+        int n = Math.min(len, headLimit - headCount);
+        if (headCount + n > head.length) {
+          growHead(n);
+        }
+        System.arraycopy(b, off, head, headCount, n);
+        headCount += n;
+        count += n;
+        off += n;
+        len -= n;
+      }
+      if (len == 0) {
+        return;
+      }
+      if (spill && spillFile == null
+          && count + len > (long) headLimit + tailLimit) {
+        startSpill();
+      }
+      if (spillStream != null) {
+        writeSpill(b, off, len);
+      }
+      count += len;
+      if (tailLimit == 0) {
+        return;
+      }
+      if (tail == null) {
+        tail = new byte[tailLimit];
+      }
+      if (len >= tailLimit) {
+        System.arraycopy(b, off + len - tailLimit, tail, 0, tailLimit);
+        tailPos = 0;
+        return;
+      }
+      int n = Math.min(len, tailLimit - tailPos);
+      System.arraycopy(b, off, tail, tailPos, n);
+      System.arraycopy(b, off + n, tail, 0, len - n);
+      tailPos = (tailPos + len) % tailLimit;
+    }
+
+    /** Releases the spill file, if any.  The capture can still be logged. */
+    void close() {
+      if (spillStream != null) {
+        try {
+          spillStream.close();
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Unable to close " + spillFile, e);
+        }
+        spillStream = null;
+      }
+    }
+
+    /**
+     * Logs the capture at FINEST.  The content is decoded when the record is
+     * formatted.
+     */
+    void log(Logger logger) {
+      close();
+      logger.log(Level.FINEST, "{0}", this);
+    }
+
+    private void growHead(int n) {
+      byte[] newHead = new byte[Math.min(headLimit,
+          Math.max(head.length * 2, headCount + n))];
+      System.arraycopy(head, 0, newHead, 0, headCount);
+      head = newHead;
+    }
+
+    /** Writes the bytes captured so far to a new temporary file. */
+    private void startSpill() {
+      if (!spill || spillFile != null) {
+        return;
+      }
+      try {
+        spillFile = File.createTempFile("gdata-wire", ".log");
+        addSpillFile(spillFile);
+        spillStream = new BufferedOutputStream(
+            new FileOutputStream(spillFile));
+        spillStream.write(head, 0, headCount);
+        if (tail != null) {
+          int tailCount = (int) Math.min(count - headCount, tailLimit);
+          spillStream.write(tail, 0, tailCount);
+        }
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Unable to spill wire log", e);
+        close();
+      }
+    }
+
+    private void writeSpill(byte[] b, int off, int len) {
+      try {
+        spillStream.write(b, off, len);
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Unable to write " + spillFile, e);
+        close();
+      }
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder();
+      builder.append(decode(head, 0, headCount));
+      long omitted = count - headCount - tailLimit;
+      if (omitted > 0) {
+        builder.append("\n... [").append(omitted).append(" bytes omitted");
+        if (spillFile != null) {
+          builder.append(", full content in ").append(spillFile);
+        }
+        builder.append("] ...\n");
+      }
+      // The tail is only allocated once the head is full, and never if the
+      // tail limit is 0.
+      if (tailLimit > 0 && tail != null) {
+        if (omitted > 0) {
+          // Reorder the ring buffer so multi-byte characters are not split.
+          byte[] ordered = new byte[tailLimit];
+          System.arraycopy(tail, tailPos, ordered, 0, tailLimit - tailPos);
+          System.arraycopy(tail, 0, ordered, tailLimit - tailPos, tailPos);
+          builder.append(decode(ordered, 0, tailLimit));
+        } else {
+          builder.append(decode(tail, 0, (int) (count - headCount)));
+        }
+      }
+      return builder.toString();
+    }
+  }
+
+  private static String decode(byte[] b, int off, int len) {
+    try {
+      return new String(b, off, len, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.google.gdata.util;
 
+import com.google.gdata.util.common.base.StringUtil;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.util.common.xml.XmlWriter;
 
@@ -80,8 +81,23 @@ public class XmlBlob {
    * top-level text() nodes mixed together with child elements.
    */
   protected String blob;
-  public String getBlob() { return blob; }
-  public void setBlob(String v) { blob = v; }
+  public String getBlob() {
+    if (blob == null && text != null) {
+      blob = StringUtil.xmlContentEscape(text);
+    }
+    return blob;
+  }
+  public void setBlob(String v) { blob = v; text = null; }
+
+
+  /**
+   * Unescaped contents of a blob that holds text only, as captured by
+   * {@link XmlParser.ElementHandler#initializeTextBlob}.  The escaped
+   * {@link #blob} is derived from it on first access.
+   */
+  protected String text;
+  public String getText() { return text; }
+  public void setText(String v) { text = v; blob = null; }
 
 
   /**
@@ -27,8 +27,8 @@ import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.ParserAdapter;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -39,14 +39,15 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 
@@ -79,8 +80,21 @@ public class XmlParser extends DefaultHandler {
     Logger.getLogger(XmlParser.class.getName());
 
 
-  // The SAXParserFactory used to create underlying SAXParser instances.
-  private static SAXParserFactory parserFactory;
+  /**
+   * Name of the logger for the structured trace of parse events.  When it is
+   * loggable at FINE as a parse starts, each element, attribute and
+   * namespace mapping is logged as a record whose parameters are the event,
+   * the name, the value, the element depth, and the line and column.
+   */
+  public static final String TRACE_LOGGER_NAME =
+      XmlParser.class.getName() + ".trace";
+
+  private static final Logger traceLogger =
+    Logger.getLogger(TRACE_LOGGER_NAME);
+
+
+  // The SAXParserFactory used to create underlying XMLReader instances.
+  private static volatile SAXParserFactory parserFactory;
 
   // Always return secure SAX parser, which is secured against XXE attacks
   private static SAXParserFactory getSAXParserFactory()
@@ -91,6 +105,87 @@ public class XmlParser extends DefaultHandler {
     return factory;
   }
 
+  /**
+   * Sets the factory used to create the SAX parsers of all XmlParser
+   * instances, so a parser implementation or parser features can be
+   * configured once rather than per document.  The factory is made namespace
+   * aware.  Parsers created by the previous factory are no longer reused.
+   *
+   * @param   factory
+   *            SAX parser factory, or {@code null} to restore the default.
+   */
+  public static void setSAXParserFactory(SAXParserFactory factory) {
+    if (factory != null) {
+      factory.setNamespaceAware(true);
+    }
+    parserFactory = factory;
+  }
+
+  // Maximum number of idle readers kept for reuse by each thread.
+  private static final int MAX_IDLE_READERS = 4;
+
+  // Content handler installed on idle readers, so they do not keep the last
+  // parsed document reachable.
+  private static final DefaultHandler IDLE_HANDLER = new DefaultHandler();
+
+  /**
+   * Idle XMLReader instances of a thread, all created by {@code factory}.
+   * Nested parses on the same thread each take their own reader.
+   */
+  private static class ReaderPool {
+    SAXParserFactory factory;
+    final LinkedList<XMLReader> idle = new LinkedList<XMLReader>();
+  }
+
+  private static final ThreadLocal<ReaderPool> readerPool =
+      new ThreadLocal<ReaderPool>() {
+        @Override
+        protected ReaderPool initialValue() {
+          return new ReaderPool();
+        }
+      };
+
+  /** Returns an idle reader of the current thread or creates a new one. */
+  private static XMLReader acquireReader()
+      throws ParserConfigurationException, SAXException {
+
+    // Lazy initialization of the parser factory.  There is a minor
+    // init-time race condition here if two parsers are created
+    // simultaneously, but the getSAXParserFactory() impl is thread-safe
+    // and worse case scenario is that multiple parser factories are
+    // initially created during the race.
+    SAXParserFactory factory = parserFactory;
+    if (factory == null) {
+      factory = getSAXParserFactory();
+      parserFactory = factory;
+    }
+
+    ReaderPool pool = readerPool.get();
+    if (pool.factory != factory) {
+      pool.idle.clear();
+      pool.factory = factory;
+    }
+    XMLReader reader = pool.idle.poll();
+    if (reader == null) {
+      reader = factory.newSAXParser().getXMLReader();
+    }
+    return reader;
+  }
+
+  /**
+   * Detaches a reader from its last document and keeps it for reuse by the
+   * current thread, unless the parse failed.
+   */
+  private static void releaseReader(XMLReader reader, boolean reusable) {
+    reader.setContentHandler(IDLE_HANDLER);
+    if (reusable) {
+      ReaderPool pool = readerPool.get();
+      if (pool.idle.size() < MAX_IDLE_READERS) {
+        pool.idle.add(reader);
+      }
+    }
+  }
+
   /**
    * Base class for custom element handlers.
    * <p>
@@ -163,6 +258,13 @@ public class XmlParser extends DefaultHandler {
     boolean mixedContent = false;
 
 
+    /**
+     * Flag indicating that {@link #xmlBlob} captures text only, see
+     * {@link #initializeTextBlob}.  Cleared when a child element shows up.
+     */
+    boolean textBlob = false;
+
+
     /**
      * Flag indicating whether unrecognized XML should be processed for
      * full-text indexing. If set, the resulting string ready for indexing is
@@ -276,8 +378,10 @@ public class XmlParser extends DefaultHandler {
         pe.setInternalReason("Unrecognized element '" + localName + "'.");
         throw pe;
       } else {
-        logger.fine("No child handler for " + localName +
-                    ". Treating as arbitrary foreign XML.");
+        if (logger.isLoggable(Level.FINE)) {
+          logger.fine("No child handler for " + localName +
+                      ". Treating as arbitrary foreign XML.");
+        }
         return null;
       }
     }
@@ -382,6 +486,30 @@ public class XmlParser extends DefaultHandler {
     }
 
 
+    /**
+     * Like {@link #initializeXmlBlob} with mixed content and no full-text
+     * indexing, for elements that are expected to contain text only.  The
+     * text is accumulated once, stored as both the element {@link #value}
+     * and the {@link XmlBlob#setText text} of the blob, and only escaped
+     * into XML if the blob is requested.  If the element turns out to have
+     * child elements, the handler falls back to regular XML blob capture.
+     * It must be called in the constructor, in the parent element handler,
+     * or in {@link #processAttribute}.
+     *
+     * @param   xmlBlob
+     *            Supplies the XML blob that stores the resulting text.
+     */
+    public void initializeTextBlob(XmlBlob xmlBlob) {
+
+      assert okToInitializeXmlBlob;
+
+      this.xmlBlob = xmlBlob;
+      this.mixedContent = true;
+      this.fullTextIndex = false;
+      this.textBlob = true;
+    }
+
+
     /**
      * Utility routine that combines the current state of {@code xml:base}
      * with the specified URI to obtain an absolute URI.
@@ -495,6 +623,20 @@ public class XmlParser extends DefaultHandler {
   /** Document locator used to get line and column numbers for SAX events. */
   Locator locator;
 
+
+  /**
+   * Diagnostics enabled for the current parse.  The levels are sampled once
+   * when the parse starts, so that SAX callbacks don't build log messages
+   * that would be discarded.
+   */
+  private boolean logFine;
+  private boolean logFiner;
+  private boolean trace;
+
+
+  /** Depth of the current element, maintained for the trace. */
+  private int depth;
+
   /**
    * Used to track namespace declarations seen within the current parse
    * stream.
@@ -659,22 +801,16 @@ public class XmlParser extends DefaultHandler {
       throws IOException,
              ParseException {
 
+    XMLReader reader = null;
+    boolean reusable = false;
     try {
 
-      // Lazy initialization of the parser factory.  There is a minor
-      // init-time race condition here if two parsers are created
-      // simultaneously, but the getSAXParserFactory() impl is thread-safe
-      // and worse case scenario is that multiple parser factories are
-      // initially created during the race.  Double-checked locking bug
-      // makes it harder to do better w/out significant overhead.
-      if (parserFactory == null) {
-        parserFactory = getSAXParserFactory();
-      }
+      startDiagnostics();
 
-      SAXParser sp = parserFactory.newSAXParser();
-      ParserAdapter pa = new ParserAdapter(sp.getParser());
-      pa.setContentHandler(this);
-      pa.parse(is);
+      reader = acquireReader();
+      reader.setContentHandler(this);
+      reader.parse(is);
+      reusable = true;
 
     } catch (SAXException e) {
 
@@ -698,6 +834,10 @@ public class XmlParser extends DefaultHandler {
 
         LogUtils.logException(logger, Level.WARNING, null, e);
         throw new ParseException(e);
+    } finally {
+      if (reader != null) {
+        releaseReader(reader, reusable);
+      }
     }
   }
 
@@ -778,7 +918,13 @@ public class XmlParser extends DefaultHandler {
                            String qName,
                            Attributes attrs) throws SAXException {
 
-    logger.fine("Start element " + qName);
+    if (logFine) {
+      logger.fine("Start element " + qName);
+    }
+    if (trace) {
+      trace("startElement", qName, null);
+    }
+    ++depth;
 
     ElementHandler parentHandler = curHandler;
 
@@ -839,13 +985,17 @@ public class XmlParser extends DefaultHandler {
             if (attrLocalName.equals("lang")) {
 
               curHandler.xmlLang = attrValue;
-              logger.finer("xml:lang=" + attrValue);
+              if (logFiner) {
+                logger.finer("xml:lang=" + attrValue);
+              }
 
             } else if (attrLocalName.equals("base")) {
 
               curHandler.xmlBase = getCumulativeXmlBase(curHandler.xmlBase,
                                                         attrValue);
-              logger.finer("xml:base=" + curHandler.xmlBase);
+              if (logFiner) {
+                logger.finer("xml:base=" + curHandler.xmlBase);
+              }
             }
           }
         }
@@ -858,7 +1008,13 @@ public class XmlParser extends DefaultHandler {
           String attrLocalName = attrs.getLocalName(i);
           String attrValue = attrs.getValue(i);
 
-          logger.finer("Attribute " + attrLocalName + "='" + attrValue + "'");
+          if (logFiner) {
+            logger.finer(
+                "Attribute " + attrLocalName + "='" + attrValue + "'");
+          }
+          if (trace) {
+            trace("attribute", attrQName, attrValue);
+          }
 
           curHandler.processAttribute(
               attrNamespace, attrQName, attrLocalName, attrValue);
@@ -917,6 +1073,9 @@ public class XmlParser extends DefaultHandler {
       // This element hasn't been recognized by the handler.
       // If the handler allows foreign XML, we'll start accumulating it as
       // a string.
+      if (curHandler != null && curHandler.textBlob) {
+        startInnerXml(curHandler);
+      }
       if (curHandler != null && curHandler.innerXml != null) {
 
         ArrayList<XmlWriter.Attribute> attrList =
@@ -957,7 +1116,13 @@ public class XmlParser extends DefaultHandler {
   public void endElement(String namespace, String localName, String qName)
       throws SAXException {
 
-    logger.fine("End element " + qName);
+    --depth;
+    if (logFine) {
+      logger.fine("End element " + qName);
+    }
+    if (trace) {
+      trace("endElement", qName, null);
+    }
 
     if (unrecognizedElements > 0) {
 
@@ -973,7 +1138,7 @@ public class XmlParser extends DefaultHandler {
 
     } else if (curHandler != null) {
 
-      if (curHandler.xmlBlob != null) {
+      if (curHandler.xmlBlob != null && !curHandler.textBlob) {
 
         StringBuffer blob = curHandler.innerXmlStringWriter.getBuffer();
         if (blob.length() != 0) {
@@ -992,6 +1157,10 @@ public class XmlParser extends DefaultHandler {
 
           // Free the memory associated with the buffer.
           curHandler.buffer = null;
+
+          if (curHandler.textBlob && curHandler.value.length() != 0) {
+            curHandler.xmlBlob.setText(curHandler.value);
+          }
         }
         curHandler.processEndElement();
       } catch (ParseException e) {
@@ -1040,6 +1209,9 @@ public class XmlParser extends DefaultHandler {
   public void ignorableWhitespace(char[] text, int start, int len)
       throws SAXException {
 
+    if (curHandler != null && curHandler.textBlob) {
+      startInnerXml(curHandler);
+    }
     if (curHandler != null && curHandler.innerXml != null &&
         (curHandler.mixedContent || unrecognizedElements > 0)) {
 
@@ -1063,6 +1235,10 @@ public class XmlParser extends DefaultHandler {
   @Override
   public void startPrefixMapping(String alias, String uri) {
 
+    if (trace) {
+      trace("startPrefixMapping", alias, uri);
+    }
+
     Stack<NamespaceDecl> mapping = namespaceMap.get(alias);
     if (mapping == null) {
       mapping = new Stack<NamespaceDecl>();
@@ -1079,10 +1255,62 @@ public class XmlParser extends DefaultHandler {
   /** SAX callback. */
   @Override
   public void endPrefixMapping(String alias) {
+    if (trace) {
+      trace("endPrefixMapping", alias, null);
+    }
     namespaceMap.get(alias).pop();
   }
 
 
+  /**
+   * Samples the diagnostics enabled for a parse.  Must be called before the
+   * first SAX event of each parse.
+   */
+  protected void startDiagnostics() {
+    logFine = logger.isLoggable(Level.FINE);
+    logFiner = logger.isLoggable(Level.FINER);
+    trace = traceLogger.isLoggable(Level.FINE);
+    depth = 0;
+  }
+
+
+  /**
+   * Logs a parse event to the trace logger.  The parameters of the record
+   * are the event, name, value, depth, line and column, and are only
+   * formatted if the record is published.
+   */
+  private void trace(String event, String name, String value) {
+    LogRecord record = new LogRecord(Level.FINE, value == null
+        ? "{0} {1} depth={3} line={4} column={5}"
+        : "{0} {1}=''{2}'' depth={3} line={4} column={5}");
+    record.setLoggerName(TRACE_LOGGER_NAME);
+    record.setParameters(new Object[] {
+        event, name, value, depth,
+        locator == null ? -1 : locator.getLineNumber(),
+        locator == null ? -1 : locator.getColumnNumber() });
+    traceLogger.log(record);
+  }
+
+
+  /**
+   * Switches a handler capturing text only to regular XML blob capture,
+   * writing the text accumulated so far to the inner XML.
+   */
+  private void startInnerXml(ElementHandler handler) throws SAXException {
+
+    handler.textBlob = false;
+    handler.innerXmlStringWriter = new StringWriter();
+    try {
+      handler.innerXml = new XmlWriter(handler.innerXmlStringWriter);
+      if (handler.buffer != null) {
+        handler.innerXml.characters(handler.buffer.toString());
+      }
+    } catch (IOException e) {
+      throw new SAXException(e);
+    }
+  }
+
+
   /** Ensures that the namespace from the QName is stored with the blob. */
   private void ensureBlobNamespace(ElementHandler handler, String qName) {
 